@@ -32,6 +32,7 @@ public class Application {
         new UserController().registerRoutes();
         new CartController().registerRoutes();
         new OrderController().registerRoutes();
+        new StatsController().registerRoutes();
         
         // Home page redirect
         get("/", (req, res) -> {
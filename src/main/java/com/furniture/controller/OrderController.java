@@ -1,11 +1,19 @@
 package com.furniture.controller;
 
+import com.furniture.data.DataConfig;
 import com.furniture.data.DataStore;
 import com.furniture.model.*;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import static spark.Spark.*;
 
@@ -13,6 +21,10 @@ import static spark.Spark.*;
  * Order API controller
  */
 public class OrderController {
+    // Same format as the order times
+    private static final DateTimeFormatter HOLD_TIME_FORMAT =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss").withZone(ZoneId.systemDefault());
+
     private final DataStore dataStore;
     private final Gson gson;
 
@@ -50,9 +62,16 @@ public class OrderController {
                 return gson.toJson(ApiResponse.error("Select the product you want to settle"));
             }
             
-            // Check inventory
             for (CartItem item : selectedItems) {
-                if (!dataStore.checkStock(item.getProductId(), item.getQuantity())) {
+                if (item.getQuantity() < 0) {
+                    res.status(400);
+                    return gson.toJson(ApiResponse.error("The quantity must be a non-negative number"));
+                }
+            }
+
+            // Check inventory, the stock held for this user at check-stock is the user's
+            for (CartItem item : selectedItems) {
+                if (!dataStore.checkStock(userId, item.getProductId(), item.getQuantity())) {
                     Product p = dataStore.getProductById(item.getProductId());
                     String stockInfo = p != null ? "(Stock: " + p.getStock() + ")" : "";
                     res.status(400);
@@ -69,7 +88,19 @@ public class OrderController {
             order.setContactName(orderInfo.getContactName());
             order.setContactPhone(orderInfo.getContactPhone());
             
-            Order createdOrder = dataStore.createOrder(order);
+            Order createdOrder;
+            try {
+                createdOrder = dataStore.createOrder(order);
+            } catch (UncheckedIOException e) {
+                System.err.println(e.getMessage() + ": " + e.getCause().getMessage());
+                res.status(500);
+                return gson.toJson(ApiResponse.error("The order could not be saved, please try again"));
+            }
+            if (createdOrder == null) {
+                // Another buyer took the stock after the check above
+                res.status(409);
+                return gson.toJson(ApiResponse.error("Insufficient stock, please check your cart again"));
+            }
             
             // Remove checked items from your cart
             for (CartItem item : selectedItems) {
@@ -88,7 +119,21 @@ public class OrderController {
                 return gson.toJson(ApiResponse.error("Please log in first"));
             }
             
-            List<Order> orders = dataStore.getOrdersByUserId(userId);
+            // Optional: only the latest "limit" orders, and only those placed since "since" (yyyy-MM-dd HH:mm:ss)
+            String limitStr = req.queryParams("limit");
+            String since = req.queryParams("since");
+            int limit;
+            try {
+                limit = limitStr != null ? Integer.parseInt(limitStr) : 0;
+            } catch (NumberFormatException e) {
+                limit = -1;
+            }
+            if (limit < 0) {
+                res.status(400);
+                return gson.toJson(ApiResponse.error("The limit must be a non-negative number"));
+            }
+            
+            List<Order> orders = dataStore.getOrdersByUserId(userId, limit, since != null ? since.replace('T', ' ') : null);
             return gson.toJson(ApiResponse.success(orders));
         });
 
@@ -134,11 +179,25 @@ public class OrderController {
                 return gson.toJson(ApiResponse.error("Please provide the product to be checked"));
             }
             
+            // Optional: hold=true takes the stock for ttl seconds, until the order is created or the hold expires
+            boolean hold = "true".equalsIgnoreCase(req.queryParams("hold"));
+            String ttlStr = req.queryParams("ttl");
+            long ttl;
+            try {
+                ttl = ttlStr != null ? Long.parseLong(ttlStr) : DataConfig.holdTtlSeconds();
+            } catch (NumberFormatException e) {
+                ttl = -1;
+            }
+            if (hold && (ttl <= 0 || ttl > DataConfig.holdMaxTtlSeconds())) {
+                res.status(400);
+                return gson.toJson(ApiResponse.error("The ttl must be between 1 and " + DataConfig.holdMaxTtlSeconds() + " seconds"));
+            }
+            
             StringBuilder errorMsg = new StringBuilder();
             boolean hasError = false;
             
             for (CartItem item : items) {
-                if (!dataStore.checkStock(item.getProductId(), item.getQuantity())) {
+                if (!dataStore.checkStock(userId, item.getProductId(), item.getQuantity())) {
                     hasError = true;
                     Product p = dataStore.getProductById(item.getProductId());
                     if (p != null) {
@@ -157,6 +216,17 @@ public class OrderController {
                 return gson.toJson(ApiResponse.error(errorMsg.toString().trim()));
             }
             
+            if (hold) {
+                long expiresAt = dataStore.holdStock(userId, Arrays.asList(items), ttl);
+                if (expiresAt < 0) {
+                    res.status(409);
+                    return gson.toJson(ApiResponse.error("Insufficient stock, please check your cart again"));
+                }
+                Map<String, Object> result = new LinkedHashMap<>();
+                result.put("holdExpiresAt", HOLD_TIME_FORMAT.format(Instant.ofEpochMilli(expiresAt)));
+                return gson.toJson(ApiResponse.success("Inventory held", result));
+            }
+            
             return gson.toJson(ApiResponse.success("Sufficient inventory"));
         });
     }
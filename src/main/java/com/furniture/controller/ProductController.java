@@ -1,16 +1,25 @@
 package com.furniture.controller;
 
 import com.furniture.data.DataStore;
+import com.furniture.data.ResponseCache;
 import com.furniture.model.*;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Locale;
+
 import static spark.Spark.*;
 
 /**
  * Product API controller
  */
 public class ProductController {
+    private static final int DEFAULT_PAGE_SIZE = 20;
+    private static final int DEFAULT_SUGGESTIONS = 8;
+    private static final int MAX_SUGGESTIONS = 50;
+
     private final DataStore dataStore;
     private final Gson gson;
 
@@ -31,10 +40,85 @@ public class ProductController {
 
             Double minPrice = minPriceStr != null ? Double.parseDouble(minPriceStr) : null;
             Double maxPrice = maxPriceStr != null ? Double.parseDouble(maxPriceStr) : null;
+            boolean inStock = "true".equalsIgnoreCase(req.queryParams("inStock"));
+            boolean onSale = "true".equalsIgnoreCase(req.queryParams("onSale"));
+            boolean fuzzy = "true".equalsIgnoreCase(req.queryParams("fuzzy"));
+
+            // Paging: limit plus offset or the nextCursor of the previous page; without them the full list is returned
+            String limitStr = req.queryParams("limit");
+            String offsetStr = req.queryParams("offset");
+            String cursor = req.queryParams("cursor");
+            boolean paged = limitStr != null || offsetStr != null || cursor != null;
+            int limit = Integer.MAX_VALUE;
+            int offset = 0;
+            if (paged) {
+                try {
+                    limit = limitStr != null ? Integer.parseInt(limitStr) : DEFAULT_PAGE_SIZE;
+                    offset = cursor != null ? decodeCursor(cursor) : offsetStr != null ? Integer.parseInt(offsetStr) : 0;
+                } catch (IllegalArgumentException e) {
+                    res.status(400);
+                    return gson.toJson(ApiResponse.error("Invalid paging parameters"));
+                }
+                if (limit < 0 || offset < 0) {
+                    res.status(400);
+                    return gson.toJson(ApiResponse.error("Invalid paging parameters"));
+                }
+            }
+
+            // The version is read before searching, a response cached under it is never older than the catalog
+            ResponseCache cache = dataStore.getSearchCache();
+            long version = dataStore.getCatalogVersion();
+            String key = searchKey(keyword, fuzzy, category, minPrice, maxPrice, inStock, onSale, sortBy, paged, offset, limit);
+            String cached = cache.get(key, version);
+            if (cached != null) {
+                return cached;
+            }
+
+            Page<Product> page = dataStore.searchProducts(keyword, fuzzy, category, minPrice, maxPrice, inStock, onSale, sortBy, offset, limit);
+            String body;
+            if (paged) {
+                // limit=0 only asks for the total, a cursor to the same offset would never advance
+                if (page.hasMore() && !page.getItems().isEmpty()) {
+                    page.setNextCursor(encodeCursor(offset + page.getItems().size()));
+                }
+                body = gson.toJson(ApiResponse.success(page));
+            } else {
+                body = gson.toJson(ApiResponse.success(page.getItems()));
+            }
+            cache.put(key, version, body);
+            return body;
+        });
+
+        // Match counts per category, material and price bucket for the same filters as the product search
+        get("/api/products/facets", (req, res) -> {
+            res.type("application/json");
+            String minPriceStr = req.queryParams("minPrice");
+            String maxPriceStr = req.queryParams("maxPrice");
+            Double minPrice = minPriceStr != null ? Double.parseDouble(minPriceStr) : null;
+            Double maxPrice = maxPriceStr != null ? Double.parseDouble(maxPriceStr) : null;
+            boolean inStock = "true".equalsIgnoreCase(req.queryParams("inStock"));
+            boolean onSale = "true".equalsIgnoreCase(req.queryParams("onSale"));
+            boolean fuzzy = "true".equalsIgnoreCase(req.queryParams("fuzzy"));
+            return gson.toJson(ApiResponse.success(dataStore.getProductFacets(
+                    req.queryParams("keyword"), fuzzy, req.queryParams("category"), minPrice, maxPrice, inStock, onSale)));
+        });
 
-            return gson.toJson(ApiResponse.success(
-                    dataStore.searchProducts(keyword, category, minPrice, maxPrice, sortBy)
-            ));
+        // Completions for the search box: product names and categories with a word starting with q
+        get("/api/products/suggest", (req, res) -> {
+            res.type("application/json");
+            String limitStr = req.queryParams("limit");
+            int limit;
+            try {
+                limit = limitStr != null ? Integer.parseInt(limitStr) : DEFAULT_SUGGESTIONS;
+            } catch (NumberFormatException e) {
+                limit = -1;
+            }
+            if (limit < 0) {
+                res.status(400);
+                return gson.toJson(ApiResponse.error("The limit must be a non-negative number"));
+            }
+            return gson.toJson(ApiResponse.success(dataStore.suggestProducts(
+                    req.queryParams("q"), req.queryParams("sortBy"), Math.min(limit, MAX_SUGGESTIONS))));
         });
 
         // Get individual product listings
@@ -56,4 +140,30 @@ public class ProductController {
             return gson.toJson(ApiResponse.success(dataStore.getAllCategories()));
         });
     }
+
+    // Requests that differ only in blank parameters or keyword case and spacing share a cache entry
+    private static String searchKey(String keyword, boolean fuzzy, String category, Double minPrice, Double maxPrice,
+                                    boolean inStock, boolean onSale, String sortBy, boolean paged, int offset, int limit) {
+        String normalizedKeyword = keyword != null ? keyword.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT) : "";
+        return normalizedKeyword
+                + '|' + fuzzy
+                + '|' + (category != null ? category : "")
+                + '|' + minPrice + '|' + maxPrice
+                + '|' + inStock + '|' + onSale
+                + '|' + (sortBy != null ? sortBy : "")
+                + '|' + (paged ? offset + ":" + limit : "all");
+    }
+
+    // The cursor is opaque to clients, it currently carries the offset of the next page
+    private static String encodeCursor(int offset) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(("o:" + offset).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static int decodeCursor(String cursor) {
+        String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        if (!decoded.startsWith("o:")) {
+            throw new IllegalArgumentException("Unknown cursor");
+        }
+        return Integer.parseInt(decoded.substring(2));
+    }
 }
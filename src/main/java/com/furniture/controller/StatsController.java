@@ -0,0 +1,41 @@
+package com.furniture.controller;
+
+import com.furniture.data.DataStore;
+import com.furniture.model.*;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import static spark.Spark.*;
+
+/**
+ * Monitoring API controller
+ */
+public class StatsController {
+    private final DataStore dataStore;
+    private final Gson gson;
+
+    public StatsController() {
+        this.dataStore = DataStore.getInstance();
+        this.gson = new GsonBuilder().create();
+    }
+
+    public void registerRoutes() {
+        // Write-behind queue depth and flush rate
+        get("/api/stats/persistence", (req, res) -> {
+            res.type("application/json");
+            return gson.toJson(ApiResponse.success(dataStore.getPersistenceStats()));
+        });
+
+        // Login sessions: active count, expiries and capacity evictions
+        get("/api/stats/sessions", (req, res) -> {
+            res.type("application/json");
+            return gson.toJson(ApiResponse.success(dataStore.getSessionStats()));
+        });
+
+        // Product search response cache: size, hit rate, stale drops and evictions
+        get("/api/stats/search-cache", (req, res) -> {
+            res.type("application/json");
+            return gson.toJson(ApiResponse.success(dataStore.getSearchCacheStats()));
+        });
+    }
+}
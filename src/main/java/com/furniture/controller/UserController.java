@@ -1,6 +1,7 @@
 package com.furniture.controller;
 
 import com.furniture.data.DataStore;
+import com.furniture.data.SessionStore;
 import com.furniture.model.*;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
@@ -17,8 +18,8 @@ import static spark.Spark.*;
 public class UserController {
     private final DataStore dataStore;
     private final Gson gson;
-    // Simple session storage (more secure scenarios should be used for practical applications)
-    private static final Map<String, String> sessions = new HashMap<>();
+    // Login sessions, read on every authenticated request without locking
+    private static final SessionStore sessions = DataStore.getInstance().getSessions();
 
     public UserController() {
         this.dataStore = DataStore.getInstance();
@@ -0,0 +1,127 @@
+package com.furniture.data;
+
+import com.furniture.model.CartItem;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Append-only cart mutation log
+ * Each line is one record holding a user's whole cart after a mutation: { "userId": "...", "items": [CartItem, ...] }
+ * Replaying the records in order over the carts.json snapshot restores the latest cart of every user,
+ * and replaying a record twice is harmless, so a crash during compaction never corrupts the carts.
+ */
+class CartLog {
+    private final Gson gson;
+    private final Path logPath;
+    private FileChannel channel;
+    private BufferedWriter writer;
+    private int recordCount;
+
+    CartLog(Path logPath) {
+        this.gson = new Gson();
+        this.logPath = logPath;
+    }
+
+    // Apply the records of a log file to the carts map, stopping at the first unreadable (torn) record
+    int replay(Path path, Map<String, List<CartItem>> carts) {
+        if (!Files.exists(path)) {
+            return 0;
+        }
+        int applied = 0;
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                CartRecord record = gson.fromJson(line, CartRecord.class);
+                if (record == null || record.userId == null) {
+                    continue;
+                }
+                carts.put(record.userId, record.items != null ? record.items : new ArrayList<>());
+                applied++;
+            }
+        } catch (IOException | JsonParseException e) {
+            System.err.println("Cart log " + path.getFileName() + " ends with an unreadable record, "
+                    + applied + " records replayed: " + e.getMessage());
+        }
+        return applied;
+    }
+
+    // Replay the active log, the records are kept and counted towards the next compaction
+    synchronized void replay(Map<String, List<CartItem>> carts) {
+        recordCount = replay(logPath, carts);
+    }
+
+    // Buffer a record, it reaches the file on the next flush so that concurrent appends share one write
+    synchronized void append(String userId, List<CartItem> items) throws IOException {
+        if (writer == null) {
+            channel = FileChannel.open(logPath, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            writer = new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8.newEncoder(), -1));
+        }
+        writer.write(gson.toJson(new CartRecord(userId, items)));
+        writer.newLine();
+        recordCount++;
+    }
+
+    synchronized void flush(boolean force) throws IOException {
+        if (writer != null) {
+            writer.flush();
+            if (force) {
+                channel.force(false);
+            }
+        }
+    }
+
+    synchronized int size() {
+        return recordCount;
+    }
+
+    // Move the active log aside so that a snapshot can be written while new records go to a fresh log
+    synchronized void rotate(Path target) throws IOException {
+        close();
+        if (Files.exists(logPath)) {
+            if (Files.exists(target)) {
+                // The previous snapshot attempt failed, keep its records in front of the newer ones
+                Files.write(target, Files.readAllBytes(logPath), StandardOpenOption.APPEND);
+                Files.delete(logPath);
+            } else {
+                Files.move(logPath, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        recordCount = 0;
+    }
+
+    synchronized void close() throws IOException {
+        if (writer != null) {
+            writer.close();
+            writer = null;
+            channel = null;
+        }
+    }
+
+    private static class CartRecord {
+        private String userId;
+        private List<CartItem> items;
+
+        CartRecord(String userId, List<CartItem> items) {
+            this.userId = userId;
+            this.items = items;
+        }
+    }
+}
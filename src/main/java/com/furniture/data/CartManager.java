@@ -2,60 +2,63 @@ package com.furniture.data;
 
 import com.furniture.model.CartItem;
 import com.furniture.model.Product;
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import com.google.gson.reflect.TypeToken;
-
-import java.io.IOException;
-import java.lang.reflect.Type;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
 * Cart Data Manager
- * The cart data is stored separately in the format: { "userId": [CartItem, ...], ... }
+ * Carts are kept in memory as { "userId": [CartItem, ...], ... }; after every mutation the user's
+ * cart is handed to the storage engine, which only has to persist that one cart.
+ * A cart is only read or changed under the lock of its user's stripe, so two requests for one user
+ * are applied one after the other while shoppers on other stripes never wait for each other.
  */
 public class CartManager {
-    private final Gson gson;
-    private final String dataPath;
-    private Map<String, List<CartItem>> carts;
+    // Power of two, far more stripes than request threads that are ever busy at once
+    private static final int LOCK_STRIPES = 64;
+
+    private final EntityStore<List<CartItem>> store;
+    private final Map<String, List<CartItem>> carts = new ConcurrentHashMap<>();
+    private final Object[] locks = new Object[LOCK_STRIPES];
     private final ProductManager productManager;
+    private final PersistenceScheduler.Handle persistence;
 
-    public CartManager(String dataPath, ProductManager productManager) {
-        this.gson = new GsonBuilder().setPrettyPrinting().create();
-        this.dataPath = dataPath;
+    public CartManager(EntityStore<List<CartItem>> store, ProductManager productManager, PersistenceScheduler scheduler) {
+        this.store = store;
         this.productManager = productManager;
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
         loadCarts();
+        this.persistence = scheduler.register("carts", this::saveCarts);
     }
 
     private void loadCarts() {
-        try {
-            String json = new String(Files.readAllBytes(Paths.get(dataPath + "carts.json")), StandardCharsets.UTF_8);
-            Type type = new TypeToken<Map<String, List<CartItem>>>(){}.getType();
-            this.carts = gson.fromJson(json, type);
-            if (this.carts == null) {
-                this.carts = new HashMap<>();
-            }
-        } catch (Exception e) {
-            this.carts = new HashMap<>();
-            System.err.println("Failed to load cart data, create a new cart store: " + e.getMessage());
-            saveCarts();
-        }
+        carts.putAll(store.loadAll());
     }
 
     public void saveCarts() {
-        try {
-            Files.write(Paths.get(dataPath + "carts.json"), gson.toJson(carts).getBytes(StandardCharsets.UTF_8));
-        } catch (IOException e) {
-            System.err.println("Failed to save cart data:" + e.getMessage());
-        }
+        store.flush(persistence.isDurable());
     }
 
-    public List<CartItem> getCart(String userId) {
+    private Object lockFor(String userId) {
+        int h = userId.hashCode();
+        return locks[(h ^ (h >>> 16)) & (LOCK_STRIPES - 1)];
+    }
+
+    // Record the current state of one user's cart, O(cart size) regardless of the number of carts.
+    // Called under the user's lock, so the store sees the user's cart states in order
+    private void logCart(String userId) {
         List<CartItem> cart = carts.get(userId);
-        return cart != null ? new ArrayList<>(cart) : new ArrayList<>();
+        store.put(userId, cart != null ? cart : new ArrayList<>());
+        persistence.markDirty();
+    }
+
+    public List<CartItem> getCart(String userId) {
+        synchronized (lockFor(userId)) {
+            // The items are copied too, the caller must not see later changes of the user's cart
+            List<CartItem> cart = carts.get(userId);
+            return cart != null ? JsonCartStore.copyItems(cart) : new ArrayList<>();
+        }
     }
 
     public boolean addToCart(String userId, String productId, int quantity) {
@@ -65,28 +68,30 @@ public class CartManager {
 	        return false;
         }
 
-        List<CartItem> cart = carts.computeIfAbsent(userId, k -> new ArrayList<>());
-        
-        // Check if the item is already in the cart
-        for (CartItem item : cart) {
-            if (item.getProductId().equals(productId)) {
-                // Update quantity
-                item.setQuantity(item.getQuantity() + quantity);
-                // Update your product information synchronously
-                updateCartItemFromProduct(item, product);
-                saveCarts();
-                return true;
+        synchronized (lockFor(userId)) {
+            List<CartItem> cart = carts.computeIfAbsent(userId, k -> new ArrayList<>());
+
+            // Check if the item is already in the cart
+            for (CartItem item : cart) {
+                if (item.getProductId().equals(productId)) {
+                    // Update quantity
+                    item.setQuantity(item.getQuantity() + quantity);
+                    // Update your product information synchronously
+                    updateCartItemFromProduct(item, product);
+                    logCart(userId);
+                    return true;
+                }
             }
+
+            // Add new products
+            CartItem newItem = new CartItem();
+            newItem.setProductId(productId);
+            newItem.setQuantity(quantity);
+            updateCartItemFromProduct(newItem, product);
+            cart.add(newItem);
+            logCart(userId);
+            return true;
         }
-        
-        // Add new products
-        CartItem newItem = new CartItem();
-        newItem.setProductId(productId);
-        newItem.setQuantity(quantity);
-        updateCartItemFromProduct(newItem, product);
-        cart.add(newItem);
-        saveCarts();
-        return true;
     }
 
     private void updateCartItemFromProduct(CartItem item, Product product) {
@@ -98,61 +103,69 @@ public class CartManager {
     }
 
     public boolean updateCartItem(String userId, String productId, int quantity) {
-        List<CartItem> cart = carts.get(userId);
-        if (cart == null) {
-	        return false;
-        }
+        synchronized (lockFor(userId)) {
+            List<CartItem> cart = carts.get(userId);
+            if (cart == null) {
+                return false;
+            }
 
-        for (CartItem item : cart) {
-            if (item.getProductId().equals(productId)) {
-                if (quantity <= 0) {
-                    cart.remove(item);
-                } else {
-                    item.setQuantity(quantity);
+            for (CartItem item : cart) {
+                if (item.getProductId().equals(productId)) {
+                    if (quantity <= 0) {
+                        cart.remove(item);
+                    } else {
+                        item.setQuantity(quantity);
+                    }
+                    logCart(userId);
+                    return true;
                 }
-                saveCarts();
-                return true;
             }
+            return false;
         }
-        return false;
     }
 
     public boolean removeFromCart(String userId, String productId) {
-        List<CartItem> cart = carts.get(userId);
-        if (cart == null) {
-	        return false;
-        }
+        synchronized (lockFor(userId)) {
+            List<CartItem> cart = carts.get(userId);
+            if (cart == null) {
+                return false;
+            }
 
-        boolean removed = cart.removeIf(item -> item.getProductId().equals(productId));
-        if (removed) {
-            saveCarts();
+            boolean removed = cart.removeIf(item -> item.getProductId().equals(productId));
+            if (removed) {
+                logCart(userId);
+            }
+            return removed;
         }
-        return removed;
     }
 
     public boolean clearCart(String userId) {
-        if (carts.containsKey(userId)) {
-            carts.put(userId, new ArrayList<>());
-            saveCarts();
-            return true;
+        synchronized (lockFor(userId)) {
+            if (carts.containsKey(userId)) {
+                carts.put(userId, new ArrayList<>());
+                logCart(userId);
+                return true;
+            }
+            return false;
         }
-        return false;
     }
 
     // Clear the specified product (after order creation)
     public void removeItems(String userId, List<CartItem> items) {
-        List<CartItem> cart = carts.get(userId);
-        if (cart == null) {
-	        return;
-        }
-
         Set<String> productIdsToRemove = new HashSet<>();
         for (CartItem item : items) {
             productIdsToRemove.add(item.getProductId());
         }
 
-        cart.removeIf(item -> productIdsToRemove.contains(item.getProductId()));
-        saveCarts();
+        synchronized (lockFor(userId)) {
+            List<CartItem> cart = carts.get(userId);
+            if (cart == null) {
+                return;
+            }
+            if (cart.removeIf(item -> productIdsToRemove.contains(item.getProductId()))) {
+                logCart(userId);
+            }
+        }
     }
 
     // Calculate the total cart amount
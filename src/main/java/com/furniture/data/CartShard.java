@@ -0,0 +1,128 @@
+package com.furniture.data;
+
+import com.furniture.model.CartItem;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * One shard of the cart store: the carts of the users hashed to it
+ * shard-NN.json is the snapshot, shard-NN.log the CartLog of the changes since, and the log is folded
+ * into a new snapshot once it grows large. Every shard has its own lock and files, so a busy cart only
+ * ever contends with the carts that share its shard.
+ */
+class CartShard {
+    // Number of log records after which the shard log is folded into a new snapshot
+    private static final int COMPACT_THRESHOLD = 256;
+
+    private static final Type CART_TYPE = new TypeToken<List<CartItem>>(){}.getType();
+
+    private final Gson gson;
+    private final int index;
+    private final Path snapshotPath;
+    private final Path compactingLogPath;
+    private final CartLog cartLog;
+    // Latest cart of every user of the shard, the lists are private copies that are replaced, never modified
+    private final Map<String, List<CartItem>> carts = new HashMap<>();
+    private final Object snapshotLock = new Object();
+    private final AtomicBoolean compacting = new AtomicBoolean(false);
+    private volatile boolean dirty;
+
+    CartShard(Path directory, int index) {
+        this.gson = new GsonBuilder().setPrettyPrinting().create();
+        this.index = index;
+        String name = String.format("shard-%02d", index);
+        this.snapshotPath = directory.resolve(name + ".json");
+        this.compactingLogPath = directory.resolve(name + ".log.compacting");
+        this.cartLog = new CartLog(directory.resolve(name + ".log"));
+    }
+
+    int getIndex() {
+        return index;
+    }
+
+    // Read the carts stored in the shard files: the snapshot, then the logs written after it
+    synchronized Map<String, List<CartItem>> read() {
+        Map<String, List<CartItem>> stored = new HashMap<>();
+        StreamingJsonLoader.<List<CartItem>>readObject(snapshotPath, snapshotPath.getFileName().toString(), CART_TYPE, stored::put);
+        // A log left over from an interrupted compaction is older than the active log
+        cartLog.replay(compactingLogPath, stored);
+        cartLog.replay(stored);
+        return stored;
+    }
+
+    // Replace the in-memory carts without logging them, used while loading
+    synchronized void restore(String userId, List<CartItem> items) {
+        carts.put(userId, items);
+    }
+
+    synchronized void clear() {
+        carts.clear();
+    }
+
+    // Record the current state of one cart, returns whether the shard log is due for compaction
+    boolean put(String userId, List<CartItem> items) {
+        synchronized (this) {
+            carts.put(userId, items);
+            try {
+                cartLog.append(userId, items);
+                dirty = true;
+            } catch (IOException e) {
+                System.err.println("Failed to save cart data:" + e.getMessage());
+            }
+        }
+        return cartLog.size() >= COMPACT_THRESHOLD && compacting.compareAndSet(false, true);
+    }
+
+    boolean isDirty() {
+        return dirty;
+    }
+
+    void flush(boolean force) {
+        // Cleared before the write, so a record appended meanwhile is either written now or flushed next time
+        dirty = false;
+        try {
+            cartLog.flush(force);
+        } catch (IOException e) {
+            dirty = true;
+            System.err.println("Failed to save cart shard " + index + ": " + e.getMessage());
+        }
+    }
+
+    // Fold the log into a new snapshot of the shard
+    void compact() {
+        synchronized (snapshotLock) {
+            try {
+                Map<String, List<CartItem>> snapshot;
+                synchronized (this) {
+                    // Switch to a fresh log atomically with respect to put
+                    snapshot = new HashMap<>(carts);
+                    cartLog.rotate(compactingLogPath);
+                }
+                DataFiles.writeAtomically(snapshotPath, gson.toJson(snapshot).getBytes(StandardCharsets.UTF_8), true);
+                Files.deleteIfExists(compactingLogPath);
+            } catch (IOException e) {
+                System.err.println("Failed to compact cart shard " + index + ": " + e.getMessage());
+            } finally {
+                compacting.set(false);
+            }
+        }
+    }
+
+    // Remove the shard files, used when the shard count shrinks and the carts have moved elsewhere
+    void delete() throws IOException {
+        cartLog.rotate(compactingLogPath);
+        Files.deleteIfExists(compactingLogPath);
+        Files.deleteIfExists(snapshotPath);
+    }
+}
@@ -0,0 +1,88 @@
+package com.furniture.data;
+
+import com.furniture.model.Product;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Immutable view of the catalog at one version
+ * A snapshot is never modified after it is published, so readers can use it without locking and
+ * always see one consistent catalog. Changing the catalog means building a new snapshot and swapping
+ * it in (see ProductManager). The lookup indexes are built together with the snapshot, so they never
+ * disagree with it. Stock is not part of the snapshot, it changes far too often and is kept in the
+ * stock counters of ProductManager instead.
+ */
+final class CatalogSnapshot {
+    private final long version;
+    private final List<Product> products;
+    // Product id -> ordinal, the position of the product in the products list
+    private final Map<String, Integer> ordinals;
+    private final ProductColumns columns;
+    private final ProductTextIndex textIndex;
+    private final ProductSortOrders sortOrders;
+    private final FacetIndex facets;
+    private final ProductFilters filters;
+    private final ProductSuggestIndex suggestions;
+
+    // stockCounters: ProductManager's stock counters by product id, the stock column refers to them
+    CatalogSnapshot(long version, List<Product> products, Map<String, AtomicInteger> stockCounters) {
+        this.version = version;
+        this.products = Collections.unmodifiableList(new ArrayList<>(products));
+        this.ordinals = new HashMap<>(products.size() * 2);
+        for (int i = 0; i < products.size(); i++) {
+            ordinals.put(products.get(i).getId(), i);
+        }
+        this.columns = new ProductColumns(this.products, stockCounters);
+        this.textIndex = new ProductTextIndex(this.products);
+        this.sortOrders = new ProductSortOrders(columns);
+        this.facets = new FacetIndex(this.products);
+        this.filters = new ProductFilters(columns, new ProductPriceIndex(columns));
+        this.suggestions = new ProductSuggestIndex(this.products);
+    }
+
+    long getVersion() {
+        return version;
+    }
+
+    List<Product> getProducts() {
+        return products;
+    }
+
+    Product getProduct(String id) {
+        Integer ordinal = id != null ? ordinals.get(id) : null;
+        return ordinal != null ? products.get(ordinal) : null;
+    }
+
+    ProductColumns getColumns() {
+        return columns;
+    }
+
+    ProductTextIndex getTextIndex() {
+        return textIndex;
+    }
+
+    ProductSortOrders getSortOrders() {
+        return sortOrders;
+    }
+
+    FacetIndex getFacets() {
+        return facets;
+    }
+
+    ProductFilters getFilters() {
+        return filters;
+    }
+
+    ProductSuggestIndex getSuggestions() {
+        return suggestions;
+    }
+
+    List<String> getCategories() {
+        return columns.categoryNames();
+    }
+}
@@ -0,0 +1,101 @@
+package com.furniture.data;
+
+/**
+ * Data layer configuration
+ * Every value can be overridden with a system property, e.g. java -Dfurniture.flush.mode=sync -jar ...
+ */
+public final class DataConfig {
+
+    private DataConfig() {}
+
+    // Storage engine: "json" (readable files, the default) or "kv" (embedded log-structured key-value store)
+    public static String storageEngine() {
+        return System.getProperty("furniture.storage.engine", "json");
+    }
+
+    // Flush policy: "write-behind" coalesces mutations in the background, "sync" writes on every mutation
+    public static String flushMode() {
+        return System.getProperty("furniture.flush.mode", "write-behind");
+    }
+
+    // Longest time a mutation waits in write-behind mode before it reaches the disk
+    public static long flushIntervalMillis() {
+        return Long.getLong("furniture.flush.intervalMs", 200L);
+    }
+
+    // Number of pending mutations that triggers a flush before the interval elapses
+    public static int flushBatchSize() {
+        return Integer.getInteger("furniture.flush.batchSize", 100);
+    }
+
+    // Orders are written and forced to disk before createOrder returns unless this is switched off
+    public static boolean syncOrderWrites() {
+        return Boolean.parseBoolean(System.getProperty("furniture.flush.syncOrders", "true"));
+    }
+
+    // Keep a memory-mapped binary copy of the catalog (products.bin) next to products.json for fast startup
+    public static boolean binaryCatalogSnapshot() {
+        return Boolean.parseBoolean(System.getProperty("furniture.catalog.binarySnapshot", "true"));
+    }
+
+    // Number of cart shards of the JSON engine, each with its own files and lock
+    public static int cartShards() {
+        return Integer.getInteger("furniture.carts.shards", 16);
+    }
+
+    // An order segment is sealed once it grows past this size...
+    public static long orderSegmentBytes() {
+        return Long.getLong("furniture.orders.segmentBytes", 8L * 1024 * 1024);
+    }
+
+    // ...or once it is older than this
+    public static long orderSegmentMillis() {
+        return Long.getLong("furniture.orders.segmentMillis", 24L * 60 * 60 * 1000);
+    }
+
+    // Number of newest order segments whose orders stay on heap
+    public static int orderHotSegments() {
+        return Integer.getInteger("furniture.orders.hotSegments", 2);
+    }
+
+    // Lifetime of a checkout stock hold when the request does not ask for one...
+    public static long holdTtlSeconds() {
+        return Long.getLong("furniture.holds.ttlSeconds", 600L);
+    }
+
+    // ...and the longest one a request may ask for
+    public static long holdMaxTtlSeconds() {
+        return Long.getLong("furniture.holds.maxTtlSeconds", 3600L);
+    }
+
+    // Node id (0-1023) in new order and user ids, ids are only unique if every instance has its own;
+    // unset, it is hashed from the host name and process id, which is only safe for a single instance
+    public static int nodeId() {
+        return Integer.getInteger("furniture.nodeId", -1);
+    }
+
+    // Number of app instances sharing the data, more than one requires furniture.nodeId
+    public static int instanceCount() {
+        return Integer.getInteger("furniture.instances", 1);
+    }
+
+    // A login session expires after this many minutes without a request...
+    public static long sessionTtlMinutes() {
+        return Long.getLong("furniture.sessions.ttlMinutes", 120L);
+    }
+
+    // ...and the oldest sessions are dropped beyond this many
+    public static int sessionCapacity() {
+        return Integer.getInteger("furniture.sessions.capacity", 100000);
+    }
+
+    // Number of serialized product search responses kept in the response cache, 0 switches the cache off
+    public static int searchCacheEntries() {
+        return Integer.getInteger("furniture.search.cacheEntries", 1024);
+    }
+
+    // Total size of the cached responses, a single response over a sixteenth of it is not cached
+    public static long searchCacheBytes() {
+        return Long.getLong("furniture.search.cacheBytes", 64L * 1024 * 1024);
+    }
+}
@@ -4,6 +4,7 @@ import com.furniture.model.*;
 
 import java.io.File;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Data storage class - Unified data access portal
@@ -12,20 +13,68 @@ import java.util.List;
 public class DataStore {
     private static DataStore instance;
     private final String dataPath;
+    private final StorageEngine storageEngine;
+    private final PersistenceScheduler persistenceScheduler;
     
     private final ProductManager productManager;
     private final UserManager userManager;
     private final CartManager cartManager;
     private final OrderManager orderManager;
+    private final InventoryHolds inventoryHolds;
+    private final SessionStore sessions;
+    private final ResponseCache searchCache;
 
     private DataStore() {
         this.dataPath = getDataPath();
         
+        this.storageEngine = createStorageEngine(DataConfig.storageEngine());
+        this.persistenceScheduler = new PersistenceScheduler();
+        
         // Initialize the individual managers
-        this.productManager = new ProductManager(dataPath);
-        this.userManager = new UserManager(dataPath);
-        this.cartManager = new CartManager(dataPath, productManager);
-        this.orderManager = new OrderManager(dataPath, productManager, cartManager);
+        this.productManager = new ProductManager(storageEngine.products(), persistenceScheduler);
+        IdGenerator ids = createIdGenerator();
+        this.userManager = new UserManager(storageEngine.users(), ids, persistenceScheduler);
+        this.cartManager = new CartManager(storageEngine.carts(), productManager, persistenceScheduler);
+        this.inventoryHolds = new InventoryHolds(productManager);
+        this.sessions = new SessionStore(DataConfig.sessionTtlMinutes() * 60 * 1000, DataConfig.sessionCapacity());
+        this.orderManager = new OrderManager(storageEngine.orders(), ids, inventoryHolds, cartManager, persistenceScheduler);
+        this.searchCache = new ResponseCache(DataConfig.searchCacheEntries(), DataConfig.searchCacheBytes());
+        
+        // Stop the expiry threads, then write the mutations still waiting in the write-behind queue before the JVM exits
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            inventoryHolds.stop();
+            sessions.stop();
+            persistenceScheduler.shutdown();
+            storageEngine.close();
+        }, "persistence-shutdown"));
+    }
+
+    private StorageEngine createStorageEngine(String name) {
+        switch (name) {
+            case "kv":
+                return new LogStructuredStorageEngine(dataPath);
+            case "json":
+                return new JsonStorageEngine(dataPath);
+            default:
+                System.err.println("Unknown storage engine " + name + ", using json");
+                return new JsonStorageEngine(dataPath);
+        }
+    }
+
+    // Several instances must be told their node ids, a hashed one may repeat and repeat their ids
+    private IdGenerator createIdGenerator() {
+        int node = DataConfig.nodeId();
+        if (node >= 0) {
+            return new IdGenerator(node);
+        }
+        if (DataConfig.instanceCount() > 1) {
+            throw new IllegalStateException("furniture.nodeId must be set to a distinct value on each of the "
+                    + DataConfig.instanceCount() + " instances");
+        }
+        node = IdGenerator.defaultNode();
+        System.err.println("furniture.nodeId is not set, using node id " + node + " from the host and process;"
+                + " order and user ids may repeat if another instance shares the data");
+        return new IdGenerator(node);
     }
 
     public static synchronized DataStore getInstance() {
@@ -54,11 +103,34 @@ public class DataStore {
         return productManager.getProductById(id);
     }
 
+    public long getCatalogVersion() {
+        return productManager.getCatalogVersion();
+    }
+
+    // Serialized product search responses, tagged with the catalog version they were rendered from
+    public ResponseCache getSearchCache() {
+        return searchCache;
+    }
+
     public List<Product> searchProducts(String keyword, String category, 
                                          Double minPrice, Double maxPrice, String sortBy) {
         return productManager.searchProducts(keyword, category, minPrice, maxPrice, sortBy);
     }
 
+    public Page<Product> searchProducts(String keyword, boolean fuzzy, String category, Double minPrice, Double maxPrice,
+                                        boolean inStock, boolean onSale, String sortBy, int offset, int limit) {
+        return productManager.searchProducts(keyword, fuzzy, category, minPrice, maxPrice, inStock, onSale, sortBy, offset, limit);
+    }
+
+    public Map<String, Object> getProductFacets(String keyword, boolean fuzzy, String category, Double minPrice,
+                                                Double maxPrice, boolean inStock, boolean onSale) {
+        return productManager.getFacets(keyword, fuzzy, category, minPrice, maxPrice, inStock, onSale);
+    }
+
+    public List<Suggestion> suggestProducts(String prefix, String sortBy, int limit) {
+        return productManager.suggest(prefix, sortBy, limit);
+    }
+
     public List<String> getAllCategories() {
         return productManager.getAllCategories();
     }
@@ -71,8 +143,23 @@ public class DataStore {
         return productManager.checkStock(productId, quantity);
     }
 
+    // Stock check of a user's own items, the stock the user's hold has already taken counts as available
+    public boolean checkStock(String userId, String productId, int quantity) {
+        return productManager.checkStock(productId, quantity - inventoryHolds.heldQuantity(userId, productId));
+    }
+
+    // Hold the items for the user until they are ordered or ttlSeconds pass; the expiry in epoch millis, -1 if short
+    public long holdStock(String userId, List<CartItem> items, long ttlSeconds) {
+        return inventoryHolds.hold(userId, items, ttlSeconds * 1000);
+    }
+
     // User-related actions
 
+    // Login sessions by token, see SessionStore
+    public SessionStore getSessions() {
+        return sessions;
+    }
+
     public User getUserById(String id) {
         return userManager.getUserById(id);
     }
@@ -146,7 +233,29 @@ public class DataStore {
         return orderManager.getOrdersByUserId(userId);
     }
 
+    public List<Order> getOrdersByUserId(String userId, int limit, String since) {
+        return orderManager.getOrdersByUserId(userId, limit, since);
+    }
+
     public Order getOrderById(String orderId) {
         return orderManager.getOrderById(orderId);
     }
+
+    // Monitoring
+
+    public Map<String, Object> getPersistenceStats() {
+        Map<String, Object> stats = persistenceScheduler.getStats();
+        stats.put("engine", storageEngine.getName());
+        return stats;
+    }
+
+    public Map<String, Object> getSessionStats() {
+        return sessions.getStats();
+    }
+
+    public Map<String, Object> getSearchCacheStats() {
+        Map<String, Object> stats = searchCache.getStats();
+        stats.put("catalogVersion", productManager.getCatalogVersion());
+        return stats;
+    }
 }
@@ -0,0 +1,18 @@
+package com.furniture.data;
+
+import java.util.Map;
+
+/**
+ * Keyed collection of a storage engine
+ */
+public interface EntityStore<V> {
+
+    // Read every record, in the order the engine keeps them; called once at startup
+    Map<String, V> loadAll();
+
+    // Record the new value of a key, it may stay buffered until the next flush
+    void put(String key, V value);
+
+    // Write buffered changes, and force them to the device if requested
+    void flush(boolean force);
+}
@@ -0,0 +1,115 @@
+package com.furniture.data;
+
+import com.furniture.model.Product;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Facet bitmaps of the catalog: one ProductBitmap of product ordinals per category, per material and per
+ * price bucket
+ * A facet count is the cardinality of the AND of a value's bitmap and the bitmap of the search result,
+ * computed block by block without building the AND, so counting does not look at the products at all.
+ */
+final class FacetIndex {
+    // Lower bounds of the price buckets, each bucket runs up to the next bound
+    private static final double[] PRICE_BOUNDS = {0, 100, 500, 1000, 2000, 5000};
+
+    private final Map<String, ProductBitmap> categories = new TreeMap<>();
+    private final Map<String, ProductBitmap> materials = new TreeMap<>();
+    private final ProductBitmap[] priceBuckets = new ProductBitmap[PRICE_BOUNDS.length];
+
+    FacetIndex(List<Product> products) {
+        Map<String, Ordinals> byCategory = new TreeMap<>();
+        Map<String, Ordinals> byMaterial = new TreeMap<>();
+        Ordinals[] byPrice = new Ordinals[PRICE_BOUNDS.length];
+        for (int b = 0; b < byPrice.length; b++) {
+            byPrice[b] = new Ordinals();
+        }
+        for (int i = 0; i < products.size(); i++) {
+            Product product = products.get(i);
+            if (product.getCategory() != null) {
+                byCategory.computeIfAbsent(product.getCategory(), c -> new Ordinals()).add(i);
+            }
+            if (product.getMaterial() != null) {
+                byMaterial.computeIfAbsent(product.getMaterial(), m -> new Ordinals()).add(i);
+            }
+            int bucket = priceBucket(product.getPrice());
+            if (bucket >= 0) {
+                byPrice[bucket].add(i);
+            }
+        }
+        int size = products.size();
+        byCategory.forEach((value, ordinals) -> categories.put(value, ordinals.toBitmap(size)));
+        byMaterial.forEach((value, ordinals) -> materials.put(value, ordinals.toBitmap(size)));
+        for (int b = 0; b < byPrice.length; b++) {
+            priceBuckets[b] = byPrice[b].toBitmap(size);
+        }
+    }
+
+    private static int priceBucket(double price) {
+        for (int b = PRICE_BOUNDS.length - 1; b >= 0; b--) {
+            if (price >= PRICE_BOUNDS[b]) {
+                return b;
+            }
+        }
+        return -1;
+    }
+
+    Map<String, Integer> countCategories(ProductBitmap result) {
+        return count(categories, result);
+    }
+
+    Map<String, Integer> countMaterials(ProductBitmap result) {
+        return count(materials, result);
+    }
+
+    // Values without a match in the result are left out. Every value is ANDed with the result, so the
+    // result is turned into words once and each member of a sparse value is probed in constant time
+    private static Map<String, Integer> count(Map<String, ProductBitmap> facet, ProductBitmap result) {
+        result = result.toWords();
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        for (Map.Entry<String, ProductBitmap> entry : facet.entrySet()) {
+            int count = entry.getValue().andCardinality(result);
+            if (count > 0) {
+                counts.put(entry.getKey(), count);
+            }
+        }
+        return counts;
+    }
+
+    // Every bucket with its bounds, min inclusive and max exclusive, the last one has no upper bound
+    List<Map<String, Object>> countPriceBuckets(ProductBitmap result) {
+        result = result.toWords();
+        List<Map<String, Object>> buckets = new ArrayList<>();
+        for (int b = 0; b < PRICE_BOUNDS.length; b++) {
+            Map<String, Object> bucket = new LinkedHashMap<>();
+            bucket.put("min", PRICE_BOUNDS[b]);
+            bucket.put("max", b + 1 < PRICE_BOUNDS.length ? PRICE_BOUNDS[b + 1] : null);
+            bucket.put("count", priceBuckets[b].andCardinality(result));
+            buckets.add(bucket);
+        }
+        return buckets;
+    }
+
+    // Ascending ordinals of one facet value, collected while the catalog is walked once
+    private static final class Ordinals {
+        private int[] values = new int[16];
+        private int count;
+
+        void add(int ordinal) {
+            if (count == values.length) {
+                values = Arrays.copyOf(values, count * 2);
+            }
+            values[count++] = ordinal;
+        }
+
+        ProductBitmap toBitmap(int size) {
+            return ProductBitmap.of(values, count, size);
+        }
+    }
+}
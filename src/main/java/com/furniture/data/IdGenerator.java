@@ -0,0 +1,63 @@
+package com.furniture.data;
+
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Unique ids for new orders and users: timestamp, node and sequence packed into one long (Snowflake style)
+ * 41 bits of milliseconds since 2024-01-01, 10 bits of node id and 12 bits of sequence, so each instance
+ * of the app can hand out 4096 ids per millisecond without asking the others. The timestamp and sequence
+ * of the last id are one atomic value, a new id is always past it: when the millisecond's sequence runs
+ * out or the clock steps back, the generator borrows the next millisecond instead of waiting or failing.
+ * Ids from one node are therefore strictly increasing. Ids of several instances are only unique if every
+ * instance has its own node id: two instances with the same node id hand out the same ids.
+ */
+public class IdGenerator {
+    private static final long EPOCH_MILLIS = 1704067200000L;
+    private static final int NODE_BITS = 10;
+    private static final int SEQUENCE_BITS = 12;
+    private static final int MAX_NODE = (1 << NODE_BITS) - 1;
+
+    private final long node;
+    // Timestamp << SEQUENCE_BITS | sequence of the last id handed out
+    private final AtomicLong last = new AtomicLong();
+
+    IdGenerator(int node) {
+        if (node < 0 || node > MAX_NODE) {
+            throw new IllegalArgumentException("The node id must be between 0 and " + MAX_NODE + ": " + node);
+        }
+        this.node = node;
+    }
+
+    // Node id of this process when none is configured, stable for the host and process.
+    // A hash, so two instances collide with probability 1/1024: only fit for a single instance
+    static int defaultNode() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            System.err.println("Failed to resolve the host name for the id generator: " + e.getMessage());
+            host = "";
+        }
+        int h = (host + '/' + ManagementFactory.getRuntimeMXBean().getName()).hashCode();
+        return (h ^ (h >>> 16)) & MAX_NODE;
+    }
+
+    public long nextId() {
+        long now = (System.currentTimeMillis() - EPOCH_MILLIS) << SEQUENCE_BITS;
+        long previous;
+        long next;
+        do {
+            previous = last.get();
+            next = Math.max(now, previous + 1);
+        } while (!last.compareAndSet(previous, next));
+        long timestamp = next >>> SEQUENCE_BITS;
+        long sequence = next & ((1L << SEQUENCE_BITS) - 1);
+        return (timestamp << (NODE_BITS + SEQUENCE_BITS)) | (node << SEQUENCE_BITS) | sequence;
+    }
+
+    public String nextId(String prefix) {
+        return prefix + nextId();
+    }
+}
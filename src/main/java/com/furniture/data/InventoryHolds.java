@@ -0,0 +1,175 @@
+package com.furniture.data;
+
+import com.furniture.model.CartItem;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Time-limited stock holds taken at checkout
+ * A hold takes the stock of a user's items right away (see ProductManager.holdStock), so the user
+ * cannot run out of stock between the stock check and the order. It then either turns into the user's
+ * order or expires and gives the stock back. Expiry runs on one timing wheel for all the holds.
+ * A user has at most one hold, a new one replaces it. Holds are not persisted, the stored stock still
+ * counts held stock, so a restart gives it back.
+ */
+public class InventoryHolds {
+    private final ProductManager productManager;
+    // User id -> the user's current hold
+    private final Map<String, Hold> holds = new ConcurrentHashMap<>();
+    private final TimingWheel<Hold> expiry;
+
+    InventoryHolds(ProductManager productManager) {
+        this.productManager = productManager;
+        this.expiry = new TimingWheel<>("inventory-hold-expiry", 100, 1024, this::expire);
+    }
+
+    /**
+     * Hold the items for the user for ttlMillis, in place of the user's previous hold
+     * Stock the previous hold already has is kept, only the difference is taken or given back.
+     * Returns the expiry time in epoch millis, or -1 if some item is short and the user holds nothing.
+     */
+    long hold(String userId, List<CartItem> items, long ttlMillis) {
+        if (!valid(items)) {
+            return -1;
+        }
+        Hold previous = holds.remove(userId);
+        if (!transfer(previous, items, true)) {
+            return -1;
+        }
+        Hold hold = new Hold(userId, quantities(items));
+        // The user may have placed another hold meanwhile, the stock of the one that loses is given back
+        Hold concurrent = holds.put(userId, hold);
+        if (concurrent != null && concurrent.claim()) {
+            productManager.releaseHeldStock(concurrent.items());
+        }
+        hold.timeout = expiry.schedule(hold, ttlMillis);
+        return hold.timeout.getDeadline();
+    }
+
+    /**
+     * Take the stock of an order's items, using the user's hold if there is one
+     * Returns false, with nothing taken and the hold given up, if some item is short.
+     */
+    boolean convert(String userId, List<CartItem> items) {
+        if (!valid(items)) {
+            return false;
+        }
+        return transfer(holds.remove(userId), items, false);
+    }
+
+    // Put back the stock of an order that could not be completed
+    void release(List<CartItem> items) {
+        productManager.releaseStock(items);
+    }
+
+    // How much of the product the user's hold has taken, for stock checks of the user's own items
+    int heldQuantity(String userId, String productId) {
+        Hold hold = holds.get(userId);
+        return hold != null && !hold.claimed.get() ? hold.quantities.getOrDefault(productId, 0) : 0;
+    }
+
+    // Stop expiring holds, on shutdown
+    void stop() {
+        expiry.stop();
+    }
+
+    // Move from the stock of a hold (null for none) to the items, taking or giving back only the difference.
+    // The items are a new hold (toHold) or an order, whose stock is sold
+    private boolean transfer(Hold from, List<CartItem> items, boolean toHold) {
+        if (from == null || !from.claim()) {
+            return toHold ? productManager.holdStock(items) : productManager.reserveStock(items);
+        }
+        if (from.timeout != null) {
+            from.timeout.cancel();
+        }
+        Map<String, Integer> wanted = quantities(items);
+        List<CartItem> missing = new ArrayList<>();
+        List<CartItem> surplus = new ArrayList<>();
+        List<CartItem> kept = new ArrayList<>();
+        for (Map.Entry<String, Integer> entry : wanted.entrySet()) {
+            int had = from.quantities.getOrDefault(entry.getKey(), 0);
+            int difference = entry.getValue() - had;
+            if (difference != 0) {
+                (difference > 0 ? missing : surplus).add(item(entry.getKey(), Math.abs(difference)));
+            }
+            if (Math.min(had, entry.getValue()) > 0) {
+                kept.add(item(entry.getKey(), Math.min(had, entry.getValue())));
+            }
+        }
+        for (Map.Entry<String, Integer> entry : from.quantities.entrySet()) {
+            if (!wanted.containsKey(entry.getKey())) {
+                surplus.add(item(entry.getKey(), entry.getValue()));
+            }
+        }
+        boolean taken = missing.isEmpty()
+                || (toHold ? productManager.holdStock(missing) : productManager.reserveStock(missing));
+        if (!taken) {
+            productManager.releaseHeldStock(from.items());
+            return false;
+        }
+        if (!surplus.isEmpty()) {
+            productManager.releaseHeldStock(surplus);
+        }
+        if (!toHold && !kept.isEmpty()) {
+            productManager.sellHeldStock(kept);
+        }
+        return true;
+    }
+
+    private void expire(Hold hold) {
+        if (hold.claim()) {
+            holds.remove(hold.userId, hold);
+            productManager.releaseHeldStock(hold.items());
+        }
+    }
+
+    // Quantities must not be negative, that would give stock back instead of taking it
+    private static boolean valid(List<CartItem> items) {
+        for (CartItem item : items) {
+            if (item.getProductId() == null || item.getQuantity() < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Map<String, Integer> quantities(List<CartItem> items) {
+        Map<String, Integer> quantities = new LinkedHashMap<>();
+        for (CartItem item : items) {
+            quantities.merge(item.getProductId(), item.getQuantity(), Integer::sum);
+        }
+        return quantities;
+    }
+
+    private static CartItem item(String productId, int quantity) {
+        return new CartItem(productId, null, 0, 0, quantity, null, 0);
+    }
+
+    private static final class Hold {
+        private final String userId;
+        private final Map<String, Integer> quantities;
+        // The stock belongs to whoever claims the hold first: its expiry, its order or its replacement
+        private final AtomicBoolean claimed = new AtomicBoolean();
+        private volatile TimingWheel.Timeout<Hold> timeout;
+
+        Hold(String userId, Map<String, Integer> quantities) {
+            this.userId = userId;
+            this.quantities = quantities;
+        }
+
+        boolean claim() {
+            return claimed.compareAndSet(false, true);
+        }
+
+        List<CartItem> items() {
+            List<CartItem> items = new ArrayList<>();
+            quantities.forEach((productId, quantity) -> items.add(item(productId, quantity)));
+            return items;
+        }
+    }
+}
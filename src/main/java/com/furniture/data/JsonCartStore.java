@@ -0,0 +1,208 @@
+package com.furniture.data;
+
+import com.furniture.model.CartItem;
+import com.google.gson.reflect.TypeToken;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Cart store of the JSON engine
+ * The carts are hashed by user id into the shards of data/carts/ (see CartShard), so a cart change
+ * appends to one shard's log and a flush writes the dirty shards in parallel. carts.json in the format
+ * { "userId": [CartItem, ...], ... } is the import format, it is read once into an empty shard directory.
+ */
+class JsonCartStore implements EntityStore<List<CartItem>> {
+    private static final Pattern SHARD_FILE = Pattern.compile("shard-(\\d+)\\.(json|log|log\\.compacting)");
+
+    private final String dataPath;
+    private final Path shardDirectory;
+    private final CartShard[] shards;
+    private final ExecutorService flusher;
+    private final ExecutorService compactor;
+
+    JsonCartStore(String dataPath) {
+        this.dataPath = dataPath;
+        this.shardDirectory = Paths.get(dataPath + "carts");
+        try {
+            Files.createDirectories(shardDirectory);
+        } catch (IOException e) {
+            System.err.println("Failed to create the cart shard directory: " + e.getMessage());
+        }
+        this.shards = new CartShard[Math.max(1, DataConfig.cartShards())];
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new CartShard(shardDirectory, i);
+        }
+        this.flusher = Executors.newFixedThreadPool(Math.min(shards.length, Runtime.getRuntime().availableProcessors()), r -> {
+            Thread t = new Thread(r, "cart-shard-flusher");
+            t.setDaemon(true);
+            return t;
+        });
+        this.compactor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "cart-log-compactor");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    private CartShard shardFor(String userId) {
+        return shards[Math.floorMod(userId.hashCode(), shards.length)];
+    }
+
+    @Override
+    public Map<String, List<CartItem>> loadAll() {
+        Map<String, List<CartItem>> loaded = new HashMap<>();
+        List<CartShard> staleShards = new ArrayList<>();
+        SortedSet<Integer> indexes = shardIndexesOnDisk(shardDirectory);
+        boolean importing = indexes.isEmpty();
+        boolean rewrite = importing;
+        if (importing) {
+            readImportFile(dataPath, loaded);
+        }
+        for (int index : indexes) {
+            CartShard source = index < shards.length ? shards[index] : new CartShard(shardDirectory, index);
+            for (Map.Entry<String, List<CartItem>> entry : source.read().entrySet()) {
+                loaded.put(entry.getKey(), entry.getValue());
+                // The shard count has changed since the cart was written
+                rewrite |= shardFor(entry.getKey()) != source;
+            }
+            if (index >= shards.length) {
+                staleShards.add(source);
+            }
+        }
+
+        Map<String, List<CartItem>> result = new HashMap<>();
+        for (CartShard shard : shards) {
+            shard.clear();
+        }
+        for (Map.Entry<String, List<CartItem>> entry : loaded.entrySet()) {
+            shardFor(entry.getKey()).restore(entry.getKey(), entry.getValue());
+            result.put(entry.getKey(), copyItems(entry.getValue()));
+        }
+        if (rewrite) {
+            for (CartShard shard : shards) {
+                shard.compact();
+            }
+            for (CartShard shard : staleShards) {
+                try {
+                    shard.delete();
+                } catch (IOException e) {
+                    System.err.println("Failed to remove cart shard " + shard.getIndex() + ": " + e.getMessage());
+                }
+            }
+            if (importing) {
+                deleteImportLogs();
+            }
+        }
+        return result;
+    }
+
+    // The stored carts, read without opening the store: no shard is written and no file is moved or deleted.
+    // For exporting the carts to another engine
+    static Map<String, List<CartItem>> readStored(String dataPath) {
+        Path shardDirectory = Paths.get(dataPath + "carts");
+        Map<String, List<CartItem>> carts = new HashMap<>();
+        SortedSet<Integer> indexes = shardIndexesOnDisk(shardDirectory);
+        if (indexes.isEmpty()) {
+            readImportFile(dataPath, carts);
+        }
+        for (int index : indexes) {
+            carts.putAll(new CartShard(shardDirectory, index).read());
+        }
+        return carts;
+    }
+
+    // carts.json, plus the logs of the single-file cart store if they are still around
+    private static void readImportFile(String dataPath, Map<String, List<CartItem>> carts) {
+        Type type = new TypeToken<List<CartItem>>(){}.getType();
+        if (StreamingJsonLoader.<List<CartItem>>readObject(Paths.get(dataPath + "carts.json"), "cart", type, carts::put) < 0) {
+            System.err.println("Failed to load cart data, create a new cart store");
+        }
+        CartLog legacyLog = new CartLog(Paths.get(dataPath + "carts.log"));
+        legacyLog.replay(Paths.get(dataPath + "carts.log.compacting"), carts);
+        legacyLog.replay(carts);
+    }
+
+    // The logs of the single-file store are in the shards now, carts.json itself is left as it is
+    private void deleteImportLogs() {
+        try {
+            Files.deleteIfExists(Paths.get(dataPath + "carts.log.compacting"));
+            Files.deleteIfExists(Paths.get(dataPath + "carts.log"));
+        } catch (IOException e) {
+            System.err.println("Failed to remove the old cart log: " + e.getMessage());
+        }
+    }
+
+    private static SortedSet<Integer> shardIndexesOnDisk(Path shardDirectory) {
+        SortedSet<Integer> indexes = new TreeSet<>();
+        if (!Files.isDirectory(shardDirectory)) {
+            return indexes;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(shardDirectory)) {
+            for (Path file : files) {
+                Matcher matcher = SHARD_FILE.matcher(file.getFileName().toString());
+                if (matcher.matches()) {
+                    indexes.add(Integer.parseInt(matcher.group(1)));
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to list cart shards: " + e.getMessage());
+        }
+        return indexes;
+    }
+
+    // Record the current state of one user's cart, only the user's shard is locked and written
+    @Override
+    public void put(String userId, List<CartItem> items) {
+        CartShard shard = shardFor(userId);
+        if (shard.put(userId, copyItems(items))) {
+            compactor.execute(shard::compact);
+        }
+    }
+
+    // Group commit: the dirty shards write the records appended since the last flush in parallel
+    @Override
+    public void flush(boolean force) {
+        List<CartShard> dirty = new ArrayList<>();
+        for (CartShard shard : shards) {
+            if (shard.isDirty()) {
+                dirty.add(shard);
+            }
+        }
+        if (dirty.size() == 1) {
+            dirty.get(0).flush(force);
+        } else if (!dirty.isEmpty()) {
+            List<Callable<Void>> tasks = new ArrayList<>();
+            for (CartShard shard : dirty) {
+                tasks.add(() -> {
+                    shard.flush(force);
+                    return null;
+                });
+            }
+            try {
+                flusher.invokeAll(tasks);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    static List<CartItem> copyItems(List<CartItem> items) {
+        List<CartItem> copy = new ArrayList<>(items.size());
+        for (CartItem item : items) {
+            copy.add(new CartItem(item.getProductId(), item.getProductName(), item.getPrice(),
+                    item.getDiscount(), item.getQuantity(), item.getImageUrl(), item.getStock()));
+        }
+        return copy;
+    }
+}
@@ -0,0 +1,72 @@
+package com.furniture.data;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Entity store of the JSON engine: one pretty-printed file in the format { "<root>": [record, ...] }
+ * A flush rewrites the whole file, so the flush scheduler is what keeps this affordable.
+ */
+class JsonEntityStore<V> implements EntityStore<V> {
+    protected final Gson gson;
+    protected final Path path;
+    private final String root;
+    private final Class<V> valueClass;
+    private final Function<V, String> keyOf;
+    private final Map<String, V> records = new LinkedHashMap<>();
+
+    JsonEntityStore(Path path, String root, Class<V> valueClass, Function<V, String> keyOf) {
+        this.gson = new GsonBuilder().setPrettyPrinting().create();
+        this.path = path;
+        this.root = root;
+        this.valueClass = valueClass;
+        this.keyOf = keyOf;
+    }
+
+    @Override
+    public synchronized Map<String, V> loadAll() {
+        records.clear();
+        for (V value : readRecords()) {
+            records.put(keyOf.apply(value), value);
+        }
+        return new LinkedHashMap<>(records);
+    }
+
+    protected List<V> readRecords() {
+        List<V> records = new ArrayList<>();
+        if (StreamingJsonLoader.<V>readArray(path, root, valueClass, records::add) < 0) {
+            System.err.println("No " + root + " data loaded from " + path.getFileName());
+        }
+        return records;
+    }
+
+    @Override
+    public synchronized void put(String key, V value) {
+        records.put(key, value);
+    }
+
+    @Override
+    public void flush(boolean force) {
+        List<V> values;
+        synchronized (this) {
+            values = new ArrayList<>(records.values());
+        }
+        try {
+            writeRecords(values, force);
+        } catch (IOException e) {
+            System.err.println("Failed to save " + root + " data: " + e.getMessage());
+        }
+    }
+
+    protected void writeRecords(List<V> values, boolean force) throws IOException {
+        Map<String, List<V>> data = new HashMap<>();
+        data.put(root, values);
+        DataFiles.writeAtomically(path, gson.toJson(data).getBytes(StandardCharsets.UTF_8), force);
+    }
+}
@@ -0,0 +1,61 @@
+package com.furniture.data;
+
+import com.furniture.model.Product;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * Product store of the JSON engine
+ * products.json is the import/export format, a binary copy (products.bin, see ProductBinaryFile)
+ * is written next to it and memory-mapped at startup while it is at least as new as the JSON.
+ */
+class JsonProductStore extends JsonEntityStore<Product> {
+    private final Path binaryPath;
+
+    JsonProductStore(String dataPath) {
+        super(Paths.get(dataPath + "products.json"), "products", Product.class, Product::getId);
+        this.binaryPath = Paths.get(dataPath + "products.bin");
+    }
+
+    @Override
+    protected List<Product> readRecords() {
+        if (DataConfig.binaryCatalogSnapshot() && isSnapshotCurrent()) {
+            try {
+                return ProductBinaryFile.open(binaryPath).readAll();
+            } catch (IOException e) {
+                System.err.println("Failed to load product snapshot, reading products.json instead: " + e.getMessage());
+            }
+        }
+        List<Product> products = super.readRecords();
+        if (DataConfig.binaryCatalogSnapshot() && Files.exists(path)) {
+            try {
+                ProductBinaryFile.write(binaryPath, products, false);
+            } catch (IOException e) {
+                System.err.println("Failed to write product snapshot: " + e.getMessage());
+            }
+        }
+        return products;
+    }
+
+    // The snapshot is only trusted if products.json has not been edited since it was written
+    private boolean isSnapshotCurrent() {
+        try {
+            return Files.exists(binaryPath) && (!Files.exists(path)
+                    || Files.getLastModifiedTime(binaryPath).compareTo(Files.getLastModifiedTime(path)) >= 0);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    @Override
+    protected void writeRecords(List<Product> values, boolean force) throws IOException {
+        super.writeRecords(values, force);
+        if (DataConfig.binaryCatalogSnapshot()) {
+            ProductBinaryFile.write(binaryPath, values, force);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.furniture.data;
+
+import com.furniture.model.CartItem;
+import com.furniture.model.Order;
+import com.furniture.model.Product;
+import com.furniture.model.User;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * JSON storage engine (default)
+ * products.json (+ products.bin), users.json, carts.json + carts.log and the orders/ segments,
+ * all human-readable and easy to inspect during development.
+ */
+class JsonStorageEngine implements StorageEngine {
+    private final JsonProductStore products;
+    private final JsonEntityStore<User> users;
+    private final JsonCartStore carts;
+    private final OrderSegmentStore orders;
+
+    JsonStorageEngine(String dataPath) {
+        this.products = new JsonProductStore(dataPath);
+        this.users = new JsonEntityStore<>(Paths.get(dataPath + "users.json"), "users", User.class, User::getId);
+        this.carts = new JsonCartStore(dataPath);
+        try {
+            this.orders = new OrderSegmentStore(Paths.get(dataPath + "orders"));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open the order store", e);
+        }
+        // orders.json is only read once, to import the existing orders into an empty store
+        if (orders.isEmpty()) {
+            readOrdersFile(Paths.get(dataPath + "orders.json"), orders::append);
+            orders.flush(true);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "json";
+    }
+
+    @Override
+    public EntityStore<Product> products() {
+        return products;
+    }
+
+    @Override
+    public EntityStore<User> users() {
+        return users;
+    }
+
+    @Override
+    public EntityStore<List<CartItem>> carts() {
+        return carts;
+    }
+
+    @Override
+    public OrderStore orders() {
+        return orders;
+    }
+
+    @Override
+    public void close() {
+        carts.flush(true);
+        try {
+            orders.close();
+        } catch (IOException e) {
+            System.err.println("Failed to close the order store: " + e.getMessage());
+        }
+    }
+
+    // Stream an orders.json export in the format { "orders": [Order, ...] } into the sink
+    static void readOrdersFile(Path path, Consumer<Order> sink) {
+        StreamingJsonLoader.readArray(path, "orders", Order.class, sink);
+    }
+}
@@ -0,0 +1,368 @@
+package com.furniture.data;
+
+import com.furniture.model.CartItem;
+import com.furniture.model.Order;
+import com.furniture.model.Product;
+import com.furniture.model.User;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+/**
+ * Embedded log-structured key-value storage engine (Bitcask style)
+ * Every put appends one record [crc32][key length][value length][key][value] to kv/data.log and points
+ * the in-memory key directory at it; values are read back from the file on demand. Records that have
+ * been overwritten are garbage, compaction copies the live records into a new file once garbage
+ * dominates. Keys are "<collection>/<id>"; orders are keyed "order/<userId>/<orderId>" so that the
+ * orders of one user form a contiguous key range.
+ * On first start the engine imports the data of the JSON engine.
+ */
+class LogStructuredStorageEngine implements StorageEngine {
+    private static final int HEADER_SIZE = 12;
+    private static final long COMPACT_MIN_BYTES = 4L * 1024 * 1024;
+
+    private final Gson gson;
+    private final Path logPath;
+    private final ConcurrentSkipListMap<String, Location> keyDir = new ConcurrentSkipListMap<>();
+    // Order id -> key, orders are looked up by id but stored under their user
+    private final Map<String, String> orderKeys = new ConcurrentHashMap<>();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private FileChannel channel;
+    private long writePosition;
+    private long liveBytes;
+
+    private final KvEntityStore<Product> products;
+    private final KvEntityStore<User> users;
+    private final KvEntityStore<List<CartItem>> carts;
+    private final KvOrderStore orders;
+
+    LogStructuredStorageEngine(String dataPath) {
+        this.gson = new Gson();
+        this.logPath = Paths.get(dataPath + "kv/data.log");
+        this.products = new KvEntityStore<>("product/", Product.class);
+        this.users = new KvEntityStore<>("user/", User.class);
+        this.carts = new KvEntityStore<>("cart/", new TypeToken<List<CartItem>>(){}.getType());
+        this.orders = new KvOrderStore();
+        try {
+            Files.createDirectories(logPath.getParent());
+            channel = FileChannel.open(logPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            recover();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open the key-value store", e);
+        }
+        if (keyDir.isEmpty()) {
+            importJsonData(dataPath);
+        }
+    }
+
+    // Rebuild the key directory from the log, a torn or corrupt tail is cut off
+    private void recover() throws IOException {
+        long size = channel.size();
+        long position = 0;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        while (position + HEADER_SIZE <= size) {
+            header.clear();
+            readFully(header, position);
+            header.flip();
+            int crc = header.getInt();
+            int keyLength = header.getInt();
+            int valueLength = header.getInt();
+            if (keyLength <= 0 || valueLength < 0 || position + HEADER_SIZE + keyLength + valueLength > size) {
+                break;
+            }
+            ByteBuffer body = ByteBuffer.allocate(keyLength + valueLength);
+            readFully(body, position + HEADER_SIZE);
+            if (checksum(body.array()) != crc) {
+                break;
+            }
+            String key = new String(body.array(), 0, keyLength, StandardCharsets.UTF_8);
+            index(key, new Location(position, keyLength, valueLength));
+            position += HEADER_SIZE + keyLength + valueLength;
+        }
+        if (position < size) {
+            System.err.println("Key-value store has an unreadable record at offset " + position + ", truncating");
+            channel.truncate(position);
+        }
+        writePosition = position;
+    }
+
+    // Only reads the files of the JSON engine, it keeps using them unchanged if it is switched back to
+    private void importJsonData(String dataPath) {
+        new JsonEntityStore<>(Paths.get(dataPath + "products.json"), "products", Product.class, Product::getId)
+                .loadAll().forEach(products::put);
+        new JsonEntityStore<>(Paths.get(dataPath + "users.json"), "users", User.class, User::getId)
+                .loadAll().forEach(users::put);
+        JsonCartStore.readStored(dataPath).forEach(carts::put);
+        if (Files.isDirectory(Paths.get(dataPath + "orders"))) {
+            try {
+                OrderSegmentStore.readStored(Paths.get(dataPath + "orders"), orders::append);
+            } catch (IOException e) {
+                System.err.println("Failed to import order segments: " + e.getMessage());
+            }
+        } else {
+            JsonStorageEngine.readOrdersFile(Paths.get(dataPath + "orders.json"), orders::append);
+        }
+        flush(true);
+    }
+
+    private void put(String key, String value) {
+        try {
+            write(key, value);
+        } catch (IOException e) {
+            System.err.println("Failed to write " + key + ": " + e.getMessage());
+        }
+    }
+
+    // Append one record, a failed write leaves the key directory and the write position as they were
+    private void write(String key, String value) throws IOException {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        byte[] valueBytes = value.getBytes(StandardCharsets.UTF_8);
+        byte[] body = new byte[keyBytes.length + valueBytes.length];
+        System.arraycopy(keyBytes, 0, body, 0, keyBytes.length);
+        System.arraycopy(valueBytes, 0, body, keyBytes.length, valueBytes.length);
+        ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + body.length);
+        record.putInt(checksum(body)).putInt(keyBytes.length).putInt(valueBytes.length).put(body).flip();
+        lock.writeLock().lock();
+        try {
+            long position = writePosition;
+            while (record.hasRemaining()) {
+                channel.write(record, position + record.position());
+            }
+            writePosition += record.limit();
+            index(key, new Location(position, keyBytes.length, valueBytes.length));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void index(String key, Location location) {
+        Location previous = keyDir.put(key, location);
+        if (previous != null) {
+            liveBytes -= previous.recordLength();
+        }
+        liveBytes += location.recordLength();
+        if (key.startsWith("order/")) {
+            orderKeys.put(key.substring(key.lastIndexOf('/') + 1), key);
+        }
+    }
+
+    private String get(String key) {
+        lock.readLock().lock();
+        try {
+            Location location = keyDir.get(key);
+            if (location == null) {
+                return null;
+            }
+            ByteBuffer value = ByteBuffer.allocate(location.valueLength);
+            readFully(value, location.offset + HEADER_SIZE + location.keyLength);
+            return new String(value.array(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            System.err.println("Failed to read " + key + ": " + e.getMessage());
+            return null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Values of every key starting with the prefix, keyed by the rest of the key
+    private Map<String, String> scan(String prefix) {
+        Map<String, String> values = new LinkedHashMap<>();
+        for (String key : keyDir.subMap(prefix, prefix + Character.MAX_VALUE).keySet()) {
+            String value = get(key);
+            if (value != null) {
+                values.put(key.substring(prefix.length()), value);
+            }
+        }
+        return values;
+    }
+
+    private void flush(boolean force) {
+        lock.writeLock().lock();
+        try {
+            if (force) {
+                channel.force(false);
+            }
+            if (writePosition > COMPACT_MIN_BYTES && liveBytes * 2 < writePosition) {
+                compact();
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to flush the key-value store: " + e.getMessage());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Copy the live records into a new log and switch over to it, called with the write lock held
+    private void compact() throws IOException {
+        Path compactPath = logPath.resolveSibling("data.log.compact");
+        Map<String, Location> moved = new HashMap<>();
+        long position = 0;
+        try (FileChannel target = FileChannel.open(compactPath, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (Map.Entry<String, Location> entry : keyDir.entrySet()) {
+                Location location = entry.getValue();
+                ByteBuffer record = ByteBuffer.allocate(location.recordLength());
+                readFully(record, location.offset);
+                record.flip();
+                while (record.hasRemaining()) {
+                    target.write(record);
+                }
+                moved.put(entry.getKey(), new Location(position, location.keyLength, location.valueLength));
+                position += location.recordLength();
+            }
+            target.force(true);
+        }
+        channel.close();
+        Files.move(compactPath, logPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel = FileChannel.open(logPath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        keyDir.putAll(moved);
+        writePosition = position;
+        liveBytes = position;
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("unexpected end of file");
+            }
+        }
+    }
+
+    private static int checksum(byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        return (int) crc.getValue();
+    }
+
+    @Override
+    public String getName() {
+        return "kv";
+    }
+
+    @Override
+    public EntityStore<Product> products() {
+        return products;
+    }
+
+    @Override
+    public EntityStore<User> users() {
+        return users;
+    }
+
+    @Override
+    public EntityStore<List<CartItem>> carts() {
+        return carts;
+    }
+
+    @Override
+    public OrderStore orders() {
+        return orders;
+    }
+
+    @Override
+    public void close() {
+        lock.writeLock().lock();
+        try {
+            channel.force(false);
+            channel.close();
+        } catch (IOException e) {
+            System.err.println("Failed to close the key-value store: " + e.getMessage());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static class Location {
+        private final long offset;
+        private final int keyLength;
+        private final int valueLength;
+
+        Location(long offset, int keyLength, int valueLength) {
+            this.offset = offset;
+            this.keyLength = keyLength;
+            this.valueLength = valueLength;
+        }
+
+        int recordLength() {
+            return HEADER_SIZE + keyLength + valueLength;
+        }
+    }
+
+    private class KvEntityStore<V> implements EntityStore<V> {
+        private final String prefix;
+        private final Type type;
+
+        KvEntityStore(String prefix, Type type) {
+            this.prefix = prefix;
+            this.type = type;
+        }
+
+        @Override
+        public Map<String, V> loadAll() {
+            Map<String, V> result = new LinkedHashMap<>();
+            for (Map.Entry<String, String> entry : scan(prefix).entrySet()) {
+                result.put(entry.getKey(), gson.fromJson(entry.getValue(), type));
+            }
+            return result;
+        }
+
+        @Override
+        public void put(String key, V value) {
+            LogStructuredStorageEngine.this.put(prefix + key, gson.toJson(value, type));
+        }
+
+        @Override
+        public void flush(boolean force) {
+            LogStructuredStorageEngine.this.flush(force);
+        }
+    }
+
+    private class KvOrderStore implements OrderStore {
+
+        @Override
+        public void append(Order order) {
+            try {
+                write("order/" + order.getUserId() + "/" + order.getId(), gson.toJson(order));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to save order " + order.getId(), e);
+            }
+        }
+
+        @Override
+        public Order find(String orderId) {
+            String key = orderKeys.get(orderId);
+            String json = key != null ? get(key) : null;
+            return json != null ? gson.fromJson(json, Order.class) : null;
+        }
+
+        @Override
+        public List<Order> findByUser(String userId) {
+            List<Order> result = new ArrayList<>();
+            for (String json : scan("order/" + userId + "/").values()) {
+                result.add(gson.fromJson(json, Order.class));
+            }
+            return result;
+        }
+
+        @Override
+        public void flush(boolean force) {
+            LogStructuredStorageEngine.this.flush(force);
+        }
+    }
+}
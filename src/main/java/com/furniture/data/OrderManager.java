@@ -1,63 +1,47 @@
 package com.furniture.data;
 
-import com.furniture.model.CartItem;
 import com.furniture.model.Order;
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import com.google.gson.reflect.TypeToken;
-
-import java.io.IOException;
-import java.lang.reflect.Type;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.nio.file.Paths;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Order Data Manager
+ * Orders are appended to the storage engine's order store and read back from it on demand.
+ * The order history of a user is indexed newest first (see UserOrderIndex) the first time it is asked
+ * for, and kept current as the user places orders.
  */
 public class OrderManager {
-    private final Gson gson;
-    private final String dataPath;
-    private List<Order> orders;
-    private final ProductManager productManager;
+    private final OrderStore store;
+    private final IdGenerator ids;
+    private final InventoryHolds holds;
     private final CartManager cartManager;
+    private final PersistenceScheduler.Handle persistence;
+    private final Map<String, UserOrderIndex> userOrders = new ConcurrentHashMap<>();
 
-    public OrderManager(String dataPath, ProductManager productManager, CartManager cartManager) {
-        this.gson = new GsonBuilder().setPrettyPrinting().create();
-        this.dataPath = dataPath;
-        this.productManager = productManager;
+    public OrderManager(OrderStore store, IdGenerator ids, InventoryHolds holds, CartManager cartManager,
+                        PersistenceScheduler scheduler) {
+        this.store = store;
+        this.ids = ids;
+        this.holds = holds;
         this.cartManager = cartManager;
-        loadOrders();
-    }
-
-    private void loadOrders() {
-        try {
-            String json = new String(Files.readAllBytes(Paths.get(dataPath + "orders.json")), StandardCharsets.UTF_8);
-            Type type = new TypeToken<Map<String, List<Order>>>(){}.getType();
-            Map<String, List<Order>> data = gson.fromJson(json, type);
-            this.orders = data != null && data.get("orders") != null ? data.get("orders") : new ArrayList<>();
-        } catch (Exception e) {
-            this.orders = new ArrayList<>();
-            System.err.println("Failed to load order data: " + e.getMessage());
-        }
+        // Orders are written durably before createOrder returns
+        this.persistence = scheduler.register("orders", this::saveOrders, DataConfig.syncOrderWrites());
     }
 
     public void saveOrders() {
-        try {
-            Map<String, List<Order>> data = new HashMap<>();
-            data.put("orders", orders);
-            Files.write(Paths.get(dataPath + "orders.json"), gson.toJson(data).getBytes(StandardCharsets.UTF_8));
-        } catch (IOException e) {
-            System.err.println("Failed to save order data:" + e.getMessage());
-        }
+        store.flush(persistence.isDurable());
     }
 
+    // Returns null without creating the order if the stock of its items could not be reserved.
+    // Throws UncheckedIOException, with the stock given back, if the order could not be written
     public Order createOrder(Order order) {
-        // Generate an order ID
-        String orderId = "ORD" + System.currentTimeMillis();
-        order.setId(orderId);
+        // All the items are reserved or none of them, a stock hold of the user is used up first
+        if (!holds.convert(order.getUserId(), order.getItems())) {
+            return null;
+        }
+
+        // Generate an order ID, unique even for orders placed in the same millisecond
+        order.setId(ids.nextId("ORD"));
         order.setStatus("Pending payment");
         order.setCreatedAt(java.time.LocalDateTime.now().toString().replace("T", " ").substring(0, 19));
         
@@ -74,13 +58,18 @@ public class OrderManager {
         order.setOriginalTotal(originalTotal);
         order.setDiscountTotal(originalTotal - total);
         
-        // Reduce inventory
-        for (CartItem item : order.getItems()) {
-            productManager.updateStock(item.getProductId(), item.getQuantity());
+        try {
+            store.append(order);
+        } catch (RuntimeException e) {
+            // Not stored, the stock goes back
+            holds.release(order.getItems());
+            throw e;
         }
-        
-        orders.add(order);
-        saveOrders();
+        persistence.markDirty();
+        userOrders.computeIfPresent(order.getUserId(), (id, index) -> {
+            index.add(order);
+            return index;
+        });
         
         // Remove the purchased item from the cart
         cartManager.removeItems(order.getUserId(), order.getItems());
@@ -89,16 +78,23 @@ public class OrderManager {
     }
 
     public List<Order> getOrdersByUserId(String userId) {
-        return orders.stream()
-                .filter(o -> o.getUserId().equals(userId))
-                .sorted((a, b) -> b.getCreatedAt().compareTo(a.getCreatedAt()))
-                .collect(Collectors.toList());
+        return getOrdersByUserId(userId, 0, null);
+    }
+
+    // Newest orders of a user first, at most limit of them (0 for no limit), created at or after since (null for all)
+    public List<Order> getOrdersByUserId(String userId, int limit, String since) {
+        UserOrderIndex index = userOrders.computeIfAbsent(userId, id -> new UserOrderIndex(store.findByUser(id)));
+        List<Order> orders = new ArrayList<>();
+        for (String orderId : index.newest(limit, since)) {
+            Order order = store.find(orderId);
+            if (order != null) {
+                orders.add(order);
+            }
+        }
+        return orders;
     }
 
     public Order getOrderById(String orderId) {
-        return orders.stream()
-                .filter(o -> o.getId().equals(orderId))
-                .findFirst()
-                .orElse(null);
+        return store.find(orderId);
     }
 }
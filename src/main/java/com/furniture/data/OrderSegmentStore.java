@@ -0,0 +1,436 @@
+package com.furniture.data;
+
+import com.furniture.model.Order;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Segmented, append-only order store
+ * Orders are appended as one JSON line each to the active segment (orders/segment-<seq>-<createdMillis>.log).
+ * The active segment is sealed and a new one started once it exceeds the configured size or age;
+ * a sealed segment gets an index file (.idx) mapping each order id to its byte range.
+ * Only the newest segments keep their orders on heap, older ones are read through their index on demand.
+ */
+class OrderSegmentStore implements OrderStore {
+    private final Gson gson;
+    private final Path directory;
+    private final long maxSegmentBytes;
+    private final long maxSegmentMillis;
+    private final int hotSegments;
+    private final List<Segment> segments = new ArrayList<>();
+    // Order id -> segment holding it, so a lookup by id does not probe every segment
+    private final Map<String, Segment> segmentOf = new HashMap<>();
+    private Segment active;
+    private FileChannel activeChannel;
+
+    OrderSegmentStore(Path directory) throws IOException {
+        this.gson = new Gson();
+        this.directory = directory;
+        this.maxSegmentBytes = DataConfig.orderSegmentBytes();
+        this.maxSegmentMillis = DataConfig.orderSegmentMillis();
+        this.hotSegments = Math.max(1, DataConfig.orderHotSegments());
+        Files.createDirectories(directory);
+        open();
+    }
+
+    boolean isEmpty() {
+        return segments.size() == 1 && active.byId.isEmpty();
+    }
+
+    private void open() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "segment-*.log")) {
+            for (Path file : stream) {
+                files.add(file);
+            }
+        }
+        files.sort(Comparator.comparing(p -> p.getFileName().toString()));
+        for (int i = 0; i < files.size(); i++) {
+            Segment segment = new Segment(files.get(i));
+            boolean last = i == files.size() - 1;
+            Path indexFile = segment.indexPath();
+            if (!last && Files.exists(indexFile)) {
+                segment.readIndex(indexFile);
+            } else {
+                scan(segment, last);
+                if (!last) {
+                    segment.writeIndex();
+                }
+            }
+            segments.add(segment);
+        }
+        if (segments.isEmpty()) {
+            segments.add(new Segment(1, System.currentTimeMillis()));
+        }
+        active = segments.get(segments.size() - 1);
+        activeChannel = FileChannel.open(active.path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        activeChannel.position(active.size);
+        for (int i = 0; i < segments.size(); i++) {
+            if (i >= segments.size() - hotSegments) {
+                segments.get(i).loadOrders();
+            }
+        }
+    }
+
+    // Rebuild the index of a segment by reading it, a torn last line of the active segment is cut off
+    private void scan(Segment segment, boolean active) throws IOException {
+        long offset = readRecords(gson, segment.path, segment::index);
+        long fileSize = Files.size(segment.path);
+        if (offset == fileSize + 1) {
+            // The last record is whole but lacks its newline, the offset counted one past the end of the file
+            if (active) {
+                try (FileChannel channel = FileChannel.open(segment.path, StandardOpenOption.WRITE)) {
+                    channel.write(ByteBuffer.wrap(new byte[]{'\n'}), fileSize);
+                }
+            } else {
+                offset = fileSize;
+            }
+        }
+        segment.size = offset;
+        if (active && fileSize > offset) {
+            try (FileChannel channel = FileChannel.open(segment.path, StandardOpenOption.WRITE)) {
+                channel.truncate(offset);
+            }
+        }
+    }
+
+    private interface RecordConsumer {
+        void accept(Order order, long offset, int length);
+    }
+
+    // Hand every record of a segment file to the consumer and return the offset after the last one read.
+    // Records without an id are skipped, the first unreadable record ends the file
+    private static long readRecords(Gson gson, Path file, RecordConsumer consumer) throws IOException {
+        long offset = 0;
+        try (InputStream in = Files.newInputStream(file);
+             BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int length = line.getBytes(StandardCharsets.UTF_8).length;
+                Order order;
+                try {
+                    order = gson.fromJson(line, Order.class);
+                } catch (JsonParseException e) {
+                    System.err.println("Order segment " + file.getFileName()
+                            + " has an unreadable record at offset " + offset + ": " + e.getMessage());
+                    break;
+                }
+                if (order != null && order.getId() != null) {
+                    consumer.accept(order, offset, length);
+                }
+                offset += length + 1;
+            }
+        }
+        return offset;
+    }
+
+    // Every order in the segments of the directory, oldest first, read without opening a store:
+    // no segment or index is created, written or truncated. For exporting the orders to another engine
+    static void readStored(Path directory, Consumer<Order> action) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "segment-*.log")) {
+            for (Path file : stream) {
+                files.add(file);
+            }
+        }
+        files.sort(Comparator.comparing(p -> p.getFileName().toString()));
+        Gson gson = new Gson();
+        for (Path file : files) {
+            readRecords(gson, file, (order, offset, length) -> action.accept(order));
+        }
+    }
+
+    // One write to the end of the active segment, whatever the number of stored orders
+    @Override
+    public synchronized void append(Order order) {
+        try {
+            long now = System.currentTimeMillis();
+            if (active.size >= maxSegmentBytes || (active.size > 0 && now - active.createdMillis >= maxSegmentMillis)) {
+                roll(now);
+            }
+            byte[] line = (gson.toJson(order) + "\n").getBytes(StandardCharsets.UTF_8);
+            ByteBuffer buffer = ByteBuffer.wrap(line);
+            while (buffer.hasRemaining()) {
+                activeChannel.write(buffer, active.size + buffer.position());
+            }
+            active.index(order, active.size, line.length - 1);
+            active.hotOrders.put(order.getId(), order);
+        } catch (IOException e) {
+            discardPartialWrite();
+            throw new UncheckedIOException("Failed to save order " + order.getId(), e);
+        }
+    }
+
+    // Cut off whatever part of a failed append reached the file, the next append starts at the last whole record
+    private void discardPartialWrite() {
+        try {
+            if (activeChannel.isOpen() && activeChannel.size() > active.size) {
+                activeChannel.truncate(active.size);
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to discard a partial order record: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public synchronized void flush(boolean force) {
+        try {
+            if (force) {
+                activeChannel.force(false);
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to save order data:" + e.getMessage());
+        }
+    }
+
+    // Seal the active segment and start a new one, segments leaving the hot window drop their orders.
+    // The next segment is opened before the old one is sealed: when any step fails the old segment
+    // stays active with its channel open, and the next append tries to roll again
+    private void roll(long now) throws IOException {
+        Segment next = new Segment(active.sequence + 1, now);
+        FileChannel nextChannel = FileChannel.open(next.path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try {
+            activeChannel.force(false);
+            active.writeIndex();
+        } catch (IOException e) {
+            nextChannel.close();
+            Files.deleteIfExists(next.path);
+            throw e;
+        }
+        FileChannel sealed = activeChannel;
+        segments.add(next);
+        active = next;
+        activeChannel = nextChannel;
+        try {
+            sealed.close();
+        } catch (IOException e) {
+            System.err.println("Failed to close a sealed order segment: " + e.getMessage());
+        }
+        int coldCount = segments.size() - hotSegments;
+        if (coldCount > 0) {
+            segments.get(coldCount - 1).hotOrders = null;
+        }
+    }
+
+    // The store monitor only guards the index lookup, records of cold segments are read after releasing it
+    @Override
+    public Order find(String orderId) {
+        Segment segment;
+        IndexEntry entry;
+        synchronized (this) {
+            segment = segmentOf.get(orderId);
+            if (segment == null) {
+                return null;
+            }
+            entry = segment.byId.get(orderId);
+            Order order = segment.hotOrder(entry);
+            if (order != null) {
+                return order;
+            }
+        }
+        return segment.readRecord(entry);
+    }
+
+    // Orders of one user, oldest first
+    @Override
+    public List<Order> findByUser(String userId) {
+        List<Segment> owners = new ArrayList<>();
+        List<IndexEntry> entries = new ArrayList<>();
+        List<Order> orders = new ArrayList<>();
+        synchronized (this) {
+            for (Segment segment : segments) {
+                List<IndexEntry> ofUser = segment.byUser.get(userId);
+                if (ofUser == null) {
+                    continue;
+                }
+                for (IndexEntry entry : ofUser) {
+                    owners.add(segment);
+                    entries.add(entry);
+                    orders.add(segment.hotOrder(entry));
+                }
+            }
+        }
+        List<Order> result = new ArrayList<>(orders.size());
+        for (int i = 0; i < orders.size(); i++) {
+            Order order = orders.get(i) != null ? orders.get(i) : owners.get(i).readRecord(entries.get(i));
+            if (order != null) {
+                result.add(order);
+            }
+        }
+        return result;
+    }
+
+    synchronized void close() throws IOException {
+        activeChannel.force(false);
+        activeChannel.close();
+        for (Segment segment : segments) {
+            segment.closeReader();
+        }
+    }
+
+    private static class IndexEntry {
+        private String orderId;
+        private String userId;
+        private long offset;
+        private int length;
+
+        IndexEntry(String orderId, String userId, long offset, int length) {
+            this.orderId = orderId;
+            this.userId = userId;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    private class Segment {
+        private final int sequence;
+        private final long createdMillis;
+        private final Path path;
+        private final Map<String, IndexEntry> byId = new LinkedHashMap<>();
+        private final Map<String, List<IndexEntry>> byUser = new HashMap<>();
+        // Orders kept on heap while the segment is hot, null once it has gone cold
+        private Map<String, Order> hotOrders;
+        private long size;
+        private volatile FileChannel reader;
+
+        Segment(int sequence, long createdMillis) {
+            this.sequence = sequence;
+            this.createdMillis = createdMillis;
+            this.path = directory.resolve(String.format("segment-%06d-%d.log", sequence, createdMillis));
+            this.hotOrders = new LinkedHashMap<>();
+        }
+
+        Segment(Path path) {
+            String[] parts = path.getFileName().toString().replace(".log", "").split("-");
+            this.sequence = Integer.parseInt(parts[1]);
+            this.createdMillis = Long.parseLong(parts[2]);
+            this.path = path;
+        }
+
+        Path indexPath() {
+            return path.resolveSibling(path.getFileName().toString().replace(".log", ".idx"));
+        }
+
+        void index(Order order, long offset, int length) {
+            IndexEntry entry = new IndexEntry(order.getId(), order.getUserId(), offset, length);
+            byId.put(entry.orderId, entry);
+            byUser.computeIfAbsent(entry.userId, k -> new ArrayList<>()).add(entry);
+            segmentOf.put(entry.orderId, this);
+            size = Math.max(size, offset + length + 1);
+        }
+
+        void readIndex(Path indexFile) throws IOException {
+            try (BufferedReader reader = Files.newBufferedReader(indexFile, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    IndexEntry entry = gson.fromJson(line, IndexEntry.class);
+                    byId.put(entry.orderId, entry);
+                    byUser.computeIfAbsent(entry.userId, k -> new ArrayList<>()).add(entry);
+                    segmentOf.put(entry.orderId, this);
+                    size = Math.max(size, entry.offset + entry.length + 1);
+                }
+            }
+        }
+
+        void writeIndex() throws IOException {
+            StringBuilder sb = new StringBuilder();
+            for (IndexEntry entry : byId.values()) {
+                sb.append(gson.toJson(entry)).append('\n');
+            }
+            DataFiles.writeAtomically(indexPath(), sb.toString().getBytes(StandardCharsets.UTF_8), true);
+        }
+
+        // Same tolerance as scan: records without an id are skipped, the first unreadable one ends the load.
+        // Only indexed orders are kept, an order the index does not know is still read through its entry
+        void loadOrders() throws IOException {
+            hotOrders = new LinkedHashMap<>();
+            try (InputStream in = Files.newInputStream(path);
+                 BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+                String line;
+                while (hotOrders.size() < byId.size() && (line = reader.readLine()) != null) {
+                    Order order;
+                    try {
+                        order = gson.fromJson(line, Order.class);
+                    } catch (JsonParseException e) {
+                        System.err.println("Order segment " + path.getFileName()
+                                + " has an unreadable record, its later orders are read on demand: " + e.getMessage());
+                        break;
+                    }
+                    if (order != null && order.getId() != null && byId.containsKey(order.getId())) {
+                        hotOrders.put(order.getId(), order);
+                    }
+                }
+            }
+        }
+
+        Order read(IndexEntry entry) {
+            Order order = hotOrder(entry);
+            return order != null ? order : readRecord(entry);
+        }
+
+        // Caller holds the store monitor, the hot map changes with appends and rolls
+        Order hotOrder(IndexEntry entry) {
+            return hotOrders != null ? hotOrders.get(entry.orderId) : null;
+        }
+
+        // Needs no lock: indexed records never change and positional reads on a shared channel are thread-safe
+        Order readRecord(IndexEntry entry) {
+            ByteBuffer buffer = ByteBuffer.allocate(entry.length);
+            try {
+                FileChannel channel = reader();
+                while (buffer.hasRemaining() && channel.read(buffer, entry.offset + buffer.position()) > 0) {
+                    // keep reading until the record is complete
+                }
+            } catch (IOException e) {
+                System.err.println("Failed to read order " + entry.orderId + ": " + e.getMessage());
+                return null;
+            }
+            try {
+                return gson.fromJson(new String(buffer.array(), StandardCharsets.UTF_8), Order.class);
+            } catch (JsonParseException e) {
+                System.err.println("Failed to read order " + entry.orderId + ": " + e.getMessage());
+                return null;
+            }
+        }
+
+        // One read channel per segment, opened on the first read from the file and kept until close
+        private FileChannel reader() throws IOException {
+            FileChannel channel = reader;
+            if (channel == null) {
+                synchronized (this) {
+                    channel = reader;
+                    if (channel == null) {
+                        channel = FileChannel.open(path, StandardOpenOption.READ);
+                        reader = channel;
+                    }
+                }
+            }
+            return channel;
+        }
+
+        synchronized void closeReader() {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                    System.err.println("Failed to close order segment " + path.getFileName() + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.furniture.data;
+
+import com.furniture.model.Order;
+
+import java.util.List;
+
+/**
+ * Append-only order collection of a storage engine
+ * Orders are not loaded at startup, they are read on demand.
+ */
+public interface OrderStore {
+
+    // Throws UncheckedIOException if the order could not be written, nothing is stored then
+    void append(Order order);
+
+    Order find(String orderId);
+
+    // Orders of one user, in no particular order
+    List<Order> findByUser(String userId);
+
+    void flush(boolean force);
+}
@@ -0,0 +1,52 @@
+package com.furniture.data;
+
+/**
+ * Sorting of product ordinals by a primitive key
+ * The sort is stable, products with the same key stay in catalog order, which is what sorting the
+ * product list with a Comparator did before the catalog had indexes.
+ */
+final class OrdinalSort {
+
+    private OrdinalSort() {}
+
+    // Ordinals 0..keys.length-1 in ascending key order
+    static int[] ascending(double[] keys) {
+        return sort(keys, 1);
+    }
+
+    // Ordinals 0..keys.length-1 in descending key order
+    static int[] descending(double[] keys) {
+        return sort(keys, -1);
+    }
+
+    private static int[] sort(double[] keys, int direction) {
+        int[] ordinals = new int[keys.length];
+        for (int i = 0; i < ordinals.length; i++) {
+            ordinals[i] = i;
+        }
+        mergeSort(ordinals, new int[ordinals.length], 0, ordinals.length, keys, direction);
+        return ordinals;
+    }
+
+    private static void mergeSort(int[] ordinals, int[] buffer, int from, int to, double[] keys, int direction) {
+        if (to - from < 2) {
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        mergeSort(ordinals, buffer, from, middle, keys, direction);
+        mergeSort(ordinals, buffer, middle, to, keys, direction);
+        if (direction * Double.compare(keys[ordinals[middle - 1]], keys[ordinals[middle]]) <= 0) {
+            return;
+        }
+        System.arraycopy(ordinals, from, buffer, from, to - from);
+        int i = from;
+        int j = middle;
+        for (int k = from; k < to; k++) {
+            if (j >= to || (i < middle && direction * Double.compare(keys[buffer[i]], keys[buffer[j]]) <= 0)) {
+                ordinals[k] = buffer[i++];
+            } else {
+                ordinals[k] = buffer[j++];
+            }
+        }
+    }
+}
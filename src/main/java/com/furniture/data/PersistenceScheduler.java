@@ -0,0 +1,195 @@
+package com.furniture.data;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Write-behind persistence scheduler shared by all data managers
+ * Managers register a flush task and mark themselves dirty after each mutation. A background thread
+ * runs each dirty task once per interval, or earlier when the pending mutations reach the batch size,
+ * so many mutations are coalesced into a single write. In "sync" mode every mutation is written at once.
+ */
+public class PersistenceScheduler {
+    private static final int RATE_WINDOW_SECONDS = 5;
+
+    private final boolean syncMode;
+    private final long intervalMillis;
+    private final int batchSize;
+    private final List<Handle> handles = new CopyOnWriteArrayList<>();
+    private final AtomicInteger queueDepth = new AtomicInteger();
+    private final AtomicLong totalFlushes = new AtomicLong();
+    // Flush counts per second, indexed by epoch second modulo the array length
+    private final AtomicLongArray flushBuckets = new AtomicLongArray(RATE_WINDOW_SECONDS + 1);
+    private final AtomicLongArray bucketSeconds = new AtomicLongArray(RATE_WINDOW_SECONDS + 1);
+    private final ReentrantLock signalLock = new ReentrantLock();
+    private final Condition batchFull = signalLock.newCondition();
+    private final Thread flusher;
+    private volatile boolean running = true;
+
+    public PersistenceScheduler() {
+        this.syncMode = "sync".equalsIgnoreCase(DataConfig.flushMode());
+        this.intervalMillis = Math.max(1L, DataConfig.flushIntervalMillis());
+        this.batchSize = Math.max(1, DataConfig.flushBatchSize());
+        this.flusher = new Thread(this::runFlusher, "persistence-flusher");
+        this.flusher.setDaemon(true);
+        if (!syncMode) {
+            this.flusher.start();
+        }
+    }
+
+    /**
+     * Register a flush task
+     * A durable handle is written and forced to disk on every mutation whatever the global mode is
+     */
+    public Handle register(String name, Runnable task, boolean durable) {
+        Handle handle = new Handle(name, task, durable || syncMode);
+        handles.add(handle);
+        return handle;
+    }
+
+    public Handle register(String name, Runnable task) {
+        return register(name, task, false);
+    }
+
+    // Write every pending mutation and stop the background thread
+    public void shutdown() {
+        running = false;
+        signalFlusher();
+        flushAll();
+    }
+
+    public void flushAll() {
+        for (Handle handle : handles) {
+            handle.flushNow();
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("mode", syncMode ? "sync" : "write-behind");
+        stats.put("intervalMs", intervalMillis);
+        stats.put("batchSize", batchSize);
+        stats.put("queueDepth", queueDepth.get());
+        stats.put("totalFlushes", totalFlushes.get());
+        stats.put("flushesPerSecond", flushesPerSecond());
+        Map<String, Object> pending = new LinkedHashMap<>();
+        for (Handle handle : handles) {
+            pending.put(handle.name, handle.pending.get());
+        }
+        stats.put("pendingByStore", pending);
+        return stats;
+    }
+
+    // Average over the last complete seconds, the current second is still filling up
+    private double flushesPerSecond() {
+        long now = currentSecond();
+        long sum = 0;
+        for (int i = 1; i <= RATE_WINDOW_SECONDS; i++) {
+            int slot = (int) ((now - i) % flushBuckets.length());
+            if (bucketSeconds.get(slot) == now - i) {
+                sum += flushBuckets.get(slot);
+            }
+        }
+        return (double) sum / RATE_WINDOW_SECONDS;
+    }
+
+    private void recordFlush() {
+        totalFlushes.incrementAndGet();
+        long second = currentSecond();
+        int slot = (int) (second % flushBuckets.length());
+        long stamped = bucketSeconds.get(slot);
+        if (stamped != second && bucketSeconds.compareAndSet(slot, stamped, second)) {
+            flushBuckets.set(slot, 0);
+        }
+        flushBuckets.incrementAndGet(slot);
+    }
+
+    private static long currentSecond() {
+        return TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+    }
+
+    private void runFlusher() {
+        while (running) {
+            signalLock.lock();
+            try {
+                if (queueDepth.get() < batchSize) {
+                    batchFull.await(intervalMillis, TimeUnit.MILLISECONDS);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                signalLock.unlock();
+            }
+            flushAll();
+        }
+    }
+
+    private void signalFlusher() {
+        signalLock.lock();
+        try {
+            batchFull.signal();
+        } finally {
+            signalLock.unlock();
+        }
+    }
+
+    /**
+     * Dirty flag of one persistent store
+     */
+    public final class Handle {
+        private final String name;
+        private final Runnable task;
+        private final boolean durable;
+        private final AtomicInteger pending = new AtomicInteger();
+        private final Object flushLock = new Object();
+
+        private Handle(String name, Runnable task, boolean durable) {
+            this.name = name;
+            this.task = task;
+            this.durable = durable;
+        }
+
+        public boolean isDurable() {
+            return durable;
+        }
+
+        public void markDirty() {
+            pending.incrementAndGet();
+            int depth = queueDepth.incrementAndGet();
+            if (durable) {
+                flushNow();
+            } else if (depth >= batchSize) {
+                signalFlusher();
+            }
+        }
+
+        // Run the flush task on the calling thread if anything is pending
+        public void flushNow() {
+            synchronized (flushLock) {
+                int count = pending.getAndSet(0);
+                if (count == 0) {
+                    return;
+                }
+                queueDepth.addAndGet(-count);
+                try {
+                    task.run();
+                    recordFlush();
+                } catch (RuntimeException e) {
+                    // The data changed while it was being written, try again on the next round
+                    pending.addAndGet(count);
+                    queueDepth.addAndGet(count);
+                    System.err.println("Failed to flush " + name + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+}
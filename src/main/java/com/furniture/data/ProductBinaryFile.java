@@ -0,0 +1,192 @@
+package com.furniture.data;
+
+import com.furniture.model.Product;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary catalog snapshot (products.bin)
+ * Layout: header, fixed-width numeric columns, string reference columns, string table.
+ * The file is memory-mapped and numbers are read straight from their column. Loading still decodes
+ * every string and materializes every Product up front: readAll() runs at startup, each distinct
+ * string is decoded once and shared by the products that reference it.
+ * products.json stays the import/export format, this file is only a faster way to load it.
+ */
+class ProductBinaryFile {
+    private static final int MAGIC = 0x46504231; // "FPB1"
+    private static final int HEADER_SIZE = 12;   // magic, product count, string count
+    private static final int STRING_COLUMNS = 7; // id, name, description, category, imageUrl, material, dimensions
+
+    private final MappedByteBuffer buffer;
+    private final int count;
+    private final int stringCount;
+    private final int priceOffset;
+    private final int discountOffset;
+    private final int ratingOffset;
+    private final int stockOffset;
+    private final int reviewCountOffset;
+    private final int stringRefOffset;
+    private final int stringIndexOffset;
+    private final int stringDataOffset;
+    private final String[] decoded;
+
+    private ProductBinaryFile(MappedByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("not a product snapshot");
+        }
+        this.count = buffer.getInt(4);
+        this.stringCount = buffer.getInt(8);
+        this.priceOffset = HEADER_SIZE;
+        this.discountOffset = priceOffset + count * Double.BYTES;
+        this.ratingOffset = discountOffset + count * Double.BYTES;
+        this.stockOffset = ratingOffset + count * Double.BYTES;
+        this.reviewCountOffset = stockOffset + count * Integer.BYTES;
+        this.stringRefOffset = reviewCountOffset + count * Integer.BYTES;
+        this.stringIndexOffset = stringRefOffset + STRING_COLUMNS * count * Integer.BYTES;
+        this.stringDataOffset = stringIndexOffset + (stringCount + 1) * Integer.BYTES;
+        if (stringDataOffset > buffer.capacity()
+                || stringDataOffset + buffer.getInt(stringIndexOffset + stringCount * Integer.BYTES) > buffer.capacity()) {
+            throw new IOException("truncated product snapshot");
+        }
+        this.decoded = new String[stringCount];
+    }
+
+    static ProductBinaryFile open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new ProductBinaryFile(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    int size() {
+        return count;
+    }
+
+    double price(int ordinal) {
+        return buffer.getDouble(priceOffset + ordinal * Double.BYTES);
+    }
+
+    double discount(int ordinal) {
+        return buffer.getDouble(discountOffset + ordinal * Double.BYTES);
+    }
+
+    double rating(int ordinal) {
+        return buffer.getDouble(ratingOffset + ordinal * Double.BYTES);
+    }
+
+    int stock(int ordinal) {
+        return buffer.getInt(stockOffset + ordinal * Integer.BYTES);
+    }
+
+    int reviewCount(int ordinal) {
+        return buffer.getInt(reviewCountOffset + ordinal * Integer.BYTES);
+    }
+
+    // Column 0..6 = id, name, description, category, imageUrl, material, dimensions
+    String string(int ordinal, int column) {
+        int ref = buffer.getInt(stringRefOffset + (column * count + ordinal) * Integer.BYTES);
+        if (ref < 0) {
+            return null;
+        }
+        String value = decoded[ref];
+        if (value == null) {
+            int start = buffer.getInt(stringIndexOffset + ref * Integer.BYTES);
+            int end = buffer.getInt(stringIndexOffset + (ref + 1) * Integer.BYTES);
+            byte[] bytes = new byte[end - start];
+            ByteBuffer slice = buffer.duplicate();
+            slice.position(stringDataOffset + start);
+            slice.get(bytes);
+            value = new String(bytes, StandardCharsets.UTF_8);
+            decoded[ref] = value;
+        }
+        return value;
+    }
+
+    Product product(int ordinal) {
+        Product p = new Product(string(ordinal, 0), string(ordinal, 1), string(ordinal, 2), price(ordinal),
+                string(ordinal, 3), string(ordinal, 4), stock(ordinal), string(ordinal, 5),
+                string(ordinal, 6), rating(ordinal), reviewCount(ordinal));
+        p.setDiscount(discount(ordinal));
+        return p;
+    }
+
+    List<Product> readAll() {
+        List<Product> products = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            products.add(product(i));
+        }
+        return products;
+    }
+
+    static void write(Path path, List<Product> products, boolean force) throws IOException {
+        int count = products.size();
+        Map<String, Integer> refs = new HashMap<>();
+        List<byte[]> strings = new ArrayList<>();
+        int[] stringRefs = new int[STRING_COLUMNS * count];
+        int stringBytes = 0;
+        for (int i = 0; i < count; i++) {
+            Product p = products.get(i);
+            String[] values = {p.getId(), p.getName(), p.getDescription(), p.getCategory(),
+                    p.getImageUrl(), p.getMaterial(), p.getDimensions()};
+            for (int column = 0; column < STRING_COLUMNS; column++) {
+                String value = values[column];
+                int ref = -1;
+                if (value != null) {
+                    Integer existing = refs.get(value);
+                    if (existing == null) {
+                        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                        existing = strings.size();
+                        refs.put(value, existing);
+                        strings.add(bytes);
+                        stringBytes += bytes.length;
+                    }
+                    ref = existing;
+                }
+                stringRefs[column * count + i] = ref;
+            }
+        }
+
+        int size = HEADER_SIZE + count * (3 * Double.BYTES + 2 * Integer.BYTES)
+                + stringRefs.length * Integer.BYTES + (strings.size() + 1) * Integer.BYTES + stringBytes;
+        ByteBuffer out = ByteBuffer.allocate(size);
+        out.putInt(MAGIC).putInt(count).putInt(strings.size());
+        for (Product p : products) {
+            out.putDouble(p.getPrice());
+        }
+        for (Product p : products) {
+            out.putDouble(p.getDiscount());
+        }
+        for (Product p : products) {
+            out.putDouble(p.getRating());
+        }
+        for (Product p : products) {
+            out.putInt(p.getStock());
+        }
+        for (Product p : products) {
+            out.putInt(p.getReviewCount());
+        }
+        for (int ref : stringRefs) {
+            out.putInt(ref);
+        }
+        int offset = 0;
+        for (byte[] bytes : strings) {
+            out.putInt(offset);
+            offset += bytes.length;
+        }
+        out.putInt(offset);
+        for (byte[] bytes : strings) {
+            out.put(bytes);
+        }
+        DataFiles.writeAtomically(path, out.array(), force);
+    }
+}
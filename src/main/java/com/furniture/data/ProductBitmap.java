@@ -0,0 +1,318 @@
+package com.furniture.data;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+import java.util.stream.IntStream;
+
+/**
+ * Compressed, immutable bitmap of product ordinals
+ * The ordinal range is cut into blocks of 65536. An empty block takes no space, a block with few
+ * members stores them as a sorted array of their low 16 bits, a block with many stores 1024 words.
+ * AND and OR work block by block on whole words or merged arrays, and large bitmaps spread the
+ * blocks over the common fork-join pool.
+ */
+final class ProductBitmap {
+    private static final int BLOCK_SHIFT = 16;
+    private static final int BLOCK_WORDS = 1 << (BLOCK_SHIFT - 6);
+    // Blocks with at most this many members are stored as arrays: 4096 chars take as much as the words
+    private static final int ARRAY_MAX = 4096;
+    private static final int PARALLEL_MIN_BLOCKS = 8;
+
+    private final Block[] blocks;
+    private final int cardinality;
+
+    private ProductBitmap(Block[] blocks) {
+        this.blocks = blocks;
+        int total = 0;
+        for (Block block : blocks) {
+            total += block != null ? block.cardinality : 0;
+        }
+        this.cardinality = total;
+    }
+
+    private static int blockCount(int size) {
+        return (size + (1 << BLOCK_SHIFT) - 1) >>> BLOCK_SHIFT;
+    }
+
+    // Bitmap of the first count ordinals, which must be ascending
+    static ProductBitmap of(int[] ordinals, int count, int size) {
+        Block[] blocks = new Block[blockCount(size)];
+        int start = 0;
+        while (start < count) {
+            int block = ordinals[start] >>> BLOCK_SHIFT;
+            int end = start;
+            while (end < count && ordinals[end] >>> BLOCK_SHIFT == block) {
+                end++;
+            }
+            char[] values = new char[end - start];
+            for (int i = start; i < end; i++) {
+                values[i - start] = (char) ordinals[i];
+            }
+            blocks[block] = Block.of(values, values.length);
+            start = end;
+        }
+        return new ProductBitmap(blocks);
+    }
+
+    // Bitmap of the ordinals 0..size-1 that satisfy the predicate
+    static ProductBitmap matching(int size, IntPredicate predicate) {
+        Block[] blocks = new Block[blockCount(size)];
+        forEachBlock(blocks.length, b -> {
+            long[] words = new long[BLOCK_WORDS];
+            int base = b << BLOCK_SHIFT;
+            int end = Math.min(size, base + (1 << BLOCK_SHIFT));
+            for (int ordinal = base; ordinal < end; ordinal++) {
+                if (predicate.test(ordinal)) {
+                    words[(ordinal - base) >>> 6] |= 1L << ordinal;
+                }
+            }
+            blocks[b] = Block.ofWords(words);
+        });
+        return new ProductBitmap(blocks);
+    }
+
+    static ProductBitmap all(int size) {
+        return matching(size, ordinal -> true);
+    }
+
+    int cardinality() {
+        return cardinality;
+    }
+
+    ProductBitmap and(ProductBitmap other) {
+        Block[] result = new Block[Math.min(blocks.length, other.blocks.length)];
+        forEachBlock(result.length, b -> {
+            if (blocks[b] != null && other.blocks[b] != null) {
+                result[b] = blocks[b].and(other.blocks[b]);
+            }
+        });
+        return new ProductBitmap(result);
+    }
+
+    // The same members with every block stored as words, for a bitmap that is probed by many others
+    ProductBitmap toWords() {
+        Block[] result = new Block[blocks.length];
+        for (int b = 0; b < blocks.length; b++) {
+            result[b] = blocks[b] != null ? blocks[b].toWords() : null;
+        }
+        return new ProductBitmap(result);
+    }
+
+    // Cardinality of the AND of both bitmaps, without building it
+    int andCardinality(ProductBitmap other) {
+        int count = 0;
+        for (int b = 0; b < Math.min(blocks.length, other.blocks.length); b++) {
+            if (blocks[b] != null && other.blocks[b] != null) {
+                count += blocks[b].andCardinality(other.blocks[b]);
+            }
+        }
+        return count;
+    }
+
+    ProductBitmap or(ProductBitmap other) {
+        Block[] result = new Block[Math.max(blocks.length, other.blocks.length)];
+        forEachBlock(result.length, b -> {
+            Block mine = b < blocks.length ? blocks[b] : null;
+            Block theirs = b < other.blocks.length ? other.blocks[b] : null;
+            result[b] = mine == null ? theirs : theirs == null ? mine : mine.or(theirs);
+        });
+        return new ProductBitmap(result);
+    }
+
+    // The member ordinals in ascending order
+    int[] toArray() {
+        int[] ordinals = new int[cardinality];
+        int n = 0;
+        for (int b = 0; b < blocks.length; b++) {
+            if (blocks[b] != null) {
+                n = blocks[b].copyTo(ordinals, n, b << BLOCK_SHIFT);
+            }
+        }
+        return ordinals;
+    }
+
+    private static void forEachBlock(int count, IntConsumer action) {
+        if (count >= PARALLEL_MIN_BLOCKS) {
+            IntStream.range(0, count).parallel().forEach(action);
+        } else {
+            for (int b = 0; b < count; b++) {
+                action.accept(b);
+            }
+        }
+    }
+
+    /**
+     * One block of 65536 ordinals, either a sorted array of the low bits of its members or a word bitmap
+     * Exactly one of values and words is set. Empty blocks are never created, they are null instead.
+     */
+    private static final class Block {
+        private final char[] values;
+        private final long[] words;
+        private final int cardinality;
+
+        private Block(char[] values, long[] words, int cardinality) {
+            this.values = values;
+            this.words = words;
+            this.cardinality = cardinality;
+        }
+
+        static Block of(char[] values, int count) {
+            if (count == 0) {
+                return null;
+            }
+            if (count <= ARRAY_MAX) {
+                return new Block(count == values.length ? values : Arrays.copyOf(values, count), null, count);
+            }
+            long[] words = new long[BLOCK_WORDS];
+            for (int i = 0; i < count; i++) {
+                words[values[i] >>> 6] |= 1L << values[i];
+            }
+            return new Block(null, words, count);
+        }
+
+        static Block ofWords(long[] words) {
+            int count = 0;
+            for (long word : words) {
+                count += Long.bitCount(word);
+            }
+            if (count == 0) {
+                return null;
+            }
+            if (count > ARRAY_MAX) {
+                return new Block(null, words, count);
+            }
+            char[] values = new char[count];
+            int n = 0;
+            for (int w = 0; w < words.length; w++) {
+                long word = words[w];
+                while (word != 0) {
+                    values[n++] = (char) ((w << 6) + Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+            return new Block(values, null, count);
+        }
+
+        boolean contains(char value) {
+            return words != null ? (words[value >>> 6] & (1L << value)) != 0 : Arrays.binarySearch(values, value) >= 0;
+        }
+
+        Block and(Block other) {
+            if (words != null && other.words != null) {
+                long[] result = new long[BLOCK_WORDS];
+                for (int w = 0; w < BLOCK_WORDS; w++) {
+                    result[w] = words[w] & other.words[w];
+                }
+                return ofWords(result);
+            }
+            // At least one side is an array, the result is never larger than it
+            Block array = values != null ? this : other;
+            Block probe = array == this ? other : this;
+            char[] result = new char[array.cardinality];
+            int n = 0;
+            if (probe.values != null) {
+                int i = 0;
+                int j = 0;
+                while (i < array.cardinality && j < probe.cardinality) {
+                    if (array.values[i] < probe.values[j]) {
+                        i++;
+                    } else if (array.values[i] > probe.values[j]) {
+                        j++;
+                    } else {
+                        result[n++] = array.values[i];
+                        i++;
+                        j++;
+                    }
+                }
+            } else {
+                for (char value : array.values) {
+                    if (probe.contains(value)) {
+                        result[n++] = value;
+                    }
+                }
+            }
+            return of(result, n);
+        }
+
+        Block toWords() {
+            if (words != null) {
+                return this;
+            }
+            long[] result = new long[BLOCK_WORDS];
+            setAll(result);
+            return new Block(null, result, cardinality);
+        }
+
+        int andCardinality(Block other) {
+            if (words != null && other.words != null) {
+                int count = 0;
+                for (int w = 0; w < BLOCK_WORDS; w++) {
+                    count += Long.bitCount(words[w] & other.words[w]);
+                }
+                return count;
+            }
+            Block array = values != null ? this : other;
+            Block probe = array == this ? other : this;
+            int count = 0;
+            if (probe.values != null) {
+                int i = 0;
+                int j = 0;
+                while (i < array.cardinality && j < probe.cardinality) {
+                    if (array.values[i] < probe.values[j]) {
+                        i++;
+                    } else if (array.values[i] > probe.values[j]) {
+                        j++;
+                    } else {
+                        count++;
+                        i++;
+                        j++;
+                    }
+                }
+            } else {
+                for (char value : array.values) {
+                    if (probe.contains(value)) {
+                        count++;
+                    }
+                }
+            }
+            return count;
+        }
+
+        Block or(Block other) {
+            long[] result = new long[BLOCK_WORDS];
+            setAll(result);
+            other.setAll(result);
+            return ofWords(result);
+        }
+
+        private void setAll(long[] target) {
+            if (words != null) {
+                for (int w = 0; w < BLOCK_WORDS; w++) {
+                    target[w] |= words[w];
+                }
+            } else {
+                for (char value : values) {
+                    target[value >>> 6] |= 1L << value;
+                }
+            }
+        }
+
+        int copyTo(int[] target, int offset, int base) {
+            if (values != null) {
+                for (char value : values) {
+                    target[offset++] = base + value;
+                }
+                return offset;
+            }
+            for (int w = 0; w < BLOCK_WORDS; w++) {
+                long word = words[w];
+                while (word != 0) {
+                    target[offset++] = base + (w << 6) + Long.numberOfTrailingZeros(word);
+                    word &= word - 1;
+                }
+            }
+            return offset;
+        }
+    }
+}
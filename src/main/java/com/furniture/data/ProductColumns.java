@@ -0,0 +1,99 @@
+package com.furniture.data;
+
+import com.furniture.model.Product;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Columnar copy of the scan-heavy product fields of one catalog snapshot
+ * Price, discount, rating and review count are parallel primitive arrays indexed by ordinal, categories
+ * are dictionary-encoded into int ids, so filters, sort keys and facets scan contiguous memory instead of
+ * following a pointer per Product. Stock changes all the time and is not copied: the stock column holds
+ * ProductManager's counters by ordinal. Product objects are only touched for the results that are returned.
+ */
+final class ProductColumns {
+    private final double[] prices;
+    private final double[] discounts;
+    private final double[] ratings;
+    private final int[] reviewCounts;
+    // Ordinal -> index into categoryNames, -1 for a product without a category
+    private final int[] categoryIds;
+    private final String[] categoryNames;
+    private final AtomicInteger[] stock;
+
+    ProductColumns(List<Product> products, Map<String, AtomicInteger> stockCounters) {
+        int size = products.size();
+        this.prices = new double[size];
+        this.discounts = new double[size];
+        this.ratings = new double[size];
+        this.reviewCounts = new int[size];
+        this.categoryIds = new int[size];
+        this.stock = new AtomicInteger[size];
+
+        TreeSet<String> names = new TreeSet<>();
+        for (Product product : products) {
+            if (product.getCategory() != null) {
+                names.add(product.getCategory());
+            }
+        }
+        this.categoryNames = names.toArray(new String[0]);
+
+        for (int i = 0; i < size; i++) {
+            Product product = products.get(i);
+            prices[i] = product.getPrice();
+            discounts[i] = product.getDiscount();
+            ratings[i] = product.getRating();
+            reviewCounts[i] = product.getReviewCount();
+            categoryIds[i] = categoryId(product.getCategory());
+            stock[i] = stockCounters.get(product.getId());
+        }
+    }
+
+    int size() {
+        return prices.length;
+    }
+
+    // The columns are shared, not copied: callers must not modify them
+    double[] prices() {
+        return prices;
+    }
+
+    double[] ratings() {
+        return ratings;
+    }
+
+    double discount(int ordinal) {
+        return discounts[ordinal];
+    }
+
+    int reviewCount(int ordinal) {
+        return reviewCounts[ordinal];
+    }
+
+    int categoryId(int ordinal) {
+        return categoryIds[ordinal];
+    }
+
+    // Dictionary id of a category name, -1 if no product has it
+    int categoryId(String name) {
+        if (name == null) {
+            return -1;
+        }
+        int id = Arrays.binarySearch(categoryNames, name);
+        return id >= 0 ? id : -1;
+    }
+
+    // The category dictionary, sorted by name
+    List<String> categoryNames() {
+        return Collections.unmodifiableList(Arrays.asList(categoryNames));
+    }
+
+    boolean inStock(int ordinal) {
+        return stock[ordinal] != null && stock[ordinal].get() > 0;
+    }
+}
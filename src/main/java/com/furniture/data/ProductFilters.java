@@ -0,0 +1,80 @@
+package com.furniture.data;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Bitmaps of the products matching the search predicates of one catalog snapshot
+ * Every predicate (a category, a price range, being on sale) is evaluated once into a ProductBitmap and
+ * cached, a search then only combines the cached bitmaps. The snapshot never changes, so neither do the
+ * bitmaps. Stock does change and its bitmap is kept by ProductManager instead.
+ */
+final class ProductFilters {
+    // Price ranges and category lists come from the request, the cache is dropped when it grows past this
+    private static final int MAX_CACHED = 1024;
+
+    private final ProductColumns columns;
+    private final ProductPriceIndex priceIndex;
+    private final ProductBitmap all;
+    private final Map<String, ProductBitmap> cache = new ConcurrentHashMap<>();
+
+    ProductFilters(ProductColumns columns, ProductPriceIndex priceIndex) {
+        this.columns = columns;
+        this.priceIndex = priceIndex;
+        this.all = ProductBitmap.all(columns.size());
+    }
+
+    int size() {
+        return columns.size();
+    }
+
+    ProductBitmap all() {
+        return all;
+    }
+
+    // Products of the category, a comma separated list matches any of its categories
+    ProductBitmap category(String category) {
+        return cached("category:" + category, () -> {
+            ProductBitmap result = null;
+            for (String name : category.split(",")) {
+                int id = columns.categoryId(name.trim());
+                ProductBitmap one = cached("category:" + name.trim(),
+                        () -> ProductBitmap.matching(columns.size(), i -> id >= 0 && columns.categoryId(i) == id));
+                result = result == null ? one : result.or(one);
+            }
+            return result;
+        });
+    }
+
+    // Products priced from minPrice to maxPrice inclusive, either bound may be null
+    ProductBitmap priceRange(Double minPrice, Double maxPrice) {
+        return cached("price:" + minPrice + ":" + maxPrice, () -> {
+            int from = priceIndex.from(minPrice);
+            int[] ordinals = new int[Math.max(0, priceIndex.to(maxPrice) - from)];
+            for (int i = 0; i < ordinals.length; i++) {
+                ordinals[i] = priceIndex.ordinal(from + i);
+            }
+            Arrays.sort(ordinals);
+            return ProductBitmap.of(ordinals, ordinals.length, columns.size());
+        });
+    }
+
+    // Products with a discount
+    ProductBitmap onSale() {
+        return cached("onSale", () -> ProductBitmap.matching(columns.size(), i -> columns.discount(i) > 0));
+    }
+
+    private ProductBitmap cached(String key, Supplier<ProductBitmap> builder) {
+        ProductBitmap bitmap = cache.get(key);
+        if (bitmap == null) {
+            bitmap = builder.get();
+            if (cache.size() >= MAX_CACHED) {
+                cache.clear();
+            }
+            cache.putIfAbsent(key, bitmap);
+        }
+        return bitmap;
+    }
+}
@@ -1,133 +1,389 @@
 package com.furniture.data;
 
+import com.furniture.model.CartItem;
+import com.furniture.model.Page;
 import com.furniture.model.Product;
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import com.google.gson.reflect.TypeToken;
-
-import java.io.IOException;
-import java.lang.reflect.Type;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.nio.file.Paths;
+import com.furniture.model.Suggestion;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Product Data Manager
+ * The catalog is published as immutable CatalogSnapshots through an atomic reference: reads take the
+ * current snapshot without locking, a catalog change builds a new snapshot and swaps it in.
+ * Stock lives in per-product atomic counters beside the snapshot, so a sale never copies the catalog.
  */
 public class ProductManager {
-    private final Gson gson;
-    private final String dataPath;
-    private List<Product> products;
+    private final EntityStore<Product> store;
+    private final AtomicReference<CatalogSnapshot> catalog = new AtomicReference<>(new CatalogSnapshot(0, Collections.emptyList(), Collections.emptyMap()));
+    // Product id -> stock, the counters are the source of truth and are written through to the Product
+    private final Map<String, AtomicInteger> stock = new ConcurrentHashMap<>();
+    // Product id -> stock taken by checkout holds (see InventoryHolds), still counted in the persisted stock
+    private final Map<String, AtomicInteger> held = new ConcurrentHashMap<>();
+    // Counts stock changes that made a product sell out or come back, the in-stock bitmap is built for one count
+    private final AtomicLong stockChanges = new AtomicLong();
+    // Catalog snapshots and stock writes, see getCatalogVersion
+    private final AtomicLong dataVersion = new AtomicLong();
+    private volatile InStock inStock;
+    private final PersistenceScheduler.Handle persistence;
 
-    public ProductManager(String dataPath) {
-        this.gson = new GsonBuilder().setPrettyPrinting().create();
-        this.dataPath = dataPath;
+    public ProductManager(EntityStore<Product> store, PersistenceScheduler scheduler) {
+        this.store = store;
         loadProducts();
+        this.persistence = scheduler.register("products", this::saveProducts);
     }
 
     private void loadProducts() {
-        try {
-            String json = new String(Files.readAllBytes(Paths.get(dataPath + "products.json")), StandardCharsets.UTF_8);
-            Type type = new TypeToken<Map<String, List<Product>>>(){}.getType();
-            Map<String, List<Product>> data = gson.fromJson(json, type);
-            this.products = data != null && data.get("products") != null ? data.get("products") : new ArrayList<>();
-        } catch (Exception e) {
-            this.products = new ArrayList<>();
-            System.err.println("Failed to load product data: " + e.getMessage());
+        publish(new ArrayList<>(store.loadAll().values()));
+    }
+
+    // Swap in a new catalog version, products that already have a counter take their stock from it
+    private void publish(List<Product> products) {
+        for (Product product : products) {
+            AtomicInteger counter = stock.computeIfAbsent(product.getId(), id -> new AtomicInteger(product.getStock()));
+            product.setStock(counter.get());
         }
+        catalog.updateAndGet(current -> new CatalogSnapshot(current.getVersion() + 1, products, stock));
+        dataVersion.incrementAndGet();
+    }
+
+    /**
+     * Version of everything a product response shows: it moves on with every catalog snapshot and every
+     * stock change. It is bumped after the change is visible, so a response computed after reading a
+     * version is never older than that version.
+     */
+    public long getCatalogVersion() {
+        return dataVersion.get();
     }
 
     public void saveProducts() {
-        try {
-            Map<String, List<Product>> data = new HashMap<>();
-            data.put("products", products);
-            Files.write(Paths.get(dataPath + "products.json"), gson.toJson(data).getBytes(StandardCharsets.UTF_8));
-        } catch (IOException e) {
-            System.err.println("Failed to save product data: " + e.getMessage());
-        }
+        store.flush(persistence.isDurable());
     }
 
     public List<Product> getAllProducts() {
-        return new ArrayList<>(products);
+        return catalog.get().getProducts();
     }
 
     public Product getProductById(String id) {
-        return products.stream()
-                .filter(p -> p.getId().equals(id))
-                .findFirst()
-                .orElse(null);
+        return catalog.get().getProduct(id);
     }
 
     public List<Product> searchProducts(String keyword, String category, 
                                          Double minPrice, Double maxPrice, String sortBy) {
-        List<Product> result = products.stream()
-                .filter(p -> {
-                    boolean match = true;
-                    if (keyword != null && !keyword.isEmpty()) {
-                        match = p.getName().toLowerCase().contains(keyword.toLowerCase()) ||
-                                p.getDescription().toLowerCase().contains(keyword.toLowerCase());
-                    }
-                    if (category != null && !category.isEmpty()) {
-                        match = match && p.getCategory().equals(category);
-                    }
-                    if (minPrice != null) {
-                        match = match && p.getPrice() >= minPrice;
-                    }
-                    if (maxPrice != null) {
-                        match = match && p.getPrice() <= maxPrice;
-                    }
-                    return match;
-                })
-                .collect(Collectors.toList());
-
-        // Sort
-        if (sortBy != null) {
-            switch (sortBy) {
-                case "price_asc":
-                    result.sort(Comparator.comparingDouble(Product::getPrice));
-                    break;
-                case "price_desc":
-                    result.sort(Comparator.comparingDouble(Product::getPrice).reversed());
-                    break;
-                case "rating":
-                    result.sort(Comparator.comparingDouble(Product::getRating).reversed());
-                    break;
-                case "sales":
-                    result.sort(Comparator.comparingInt(Product::getReviewCount).reversed());
-                    break;
+        return searchProducts(keyword, false, category, minPrice, maxPrice, false, false, sortBy, 0, Integer.MAX_VALUE).getItems();
+    }
+
+    /**
+     * One page of the search result: limit products starting at offset, plus the total number of matches
+     * fuzzy: the keyword tokens also match words within a typo or two of them
+     */
+    public Page<Product> searchProducts(String keyword, boolean fuzzy, String category, Double minPrice, Double maxPrice,
+                                        boolean inStock, boolean onSale, String sortBy, int offset, int limit) {
+        CatalogSnapshot snapshot = catalog.get();
+        ProductTextIndex.Hits hits = keywordHits(snapshot, keyword, fuzzy);
+        Matches matches = filter(snapshot, hits, category, minPrice, maxPrice, inStock, onSale);
+
+        // Only the products up to the end of the page are ordered, by sortBy, then relevance, then catalog order
+        int end = (int) Math.min((long) offset + limit, matches.count);
+        end = snapshot.getSortOrders().top(sortBy, matches.ordinals, matches.scores, matches.count, end);
+
+        List<Product> items = new ArrayList<>(Math.max(0, end - offset));
+        for (int i = offset; i < end; i++) {
+            items.add(snapshot.getProducts().get(matches.ordinals[i]));
+        }
+        return new Page<>(items, matches.count, offset, limit);
+    }
+
+    /**
+     * Facet counts of a search: the number of matches per category, per material and per price bucket
+     * As usual for facets, the category counts ignore the category filter and the price bucket counts
+     * ignore the price filter, so that they show what choosing another value would find.
+     */
+    public Map<String, Object> getFacets(String keyword, boolean fuzzy, String category, Double minPrice, Double maxPrice,
+                                         boolean inStock, boolean onSale) {
+        CatalogSnapshot snapshot = catalog.get();
+        ProductFilters filters = snapshot.getFilters();
+        FacetIndex facets = snapshot.getFacets();
+
+        // The filters every count shares are ANDed once, the category and the price filter per count
+        ProductBitmap shared = sharedFilters(snapshot, keywordHits(snapshot, keyword, fuzzy), inStock, onSale);
+        ProductBitmap byCategory = category != null && !category.isEmpty() ? filters.category(category) : null;
+        ProductBitmap byPrice = minPrice != null || maxPrice != null ? filters.priceRange(minPrice, maxPrice) : null;
+        ProductBitmap anyCategory = allIfUnfiltered(filters, and(shared, byPrice));
+        ProductBitmap anyPrice = allIfUnfiltered(filters, and(shared, byCategory));
+        ProductBitmap all = byCategory == null ? anyCategory : byPrice == null ? anyPrice : anyCategory.and(byCategory);
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("total", all.cardinality());
+        result.put("categories", facets.countCategories(anyCategory));
+        result.put("materials", facets.countMaterials(all));
+        result.put("priceBuckets", facets.countPriceBuckets(anyPrice));
+        return result;
+    }
+
+    // Keyword hits come from the inverted index, in catalog order with their relevance scores
+    private static ProductTextIndex.Hits keywordHits(CatalogSnapshot snapshot, String keyword, boolean fuzzy) {
+        return keyword != null && !keyword.isEmpty() ? snapshot.getTextIndex().search(keyword, fuzzy) : null;
+    }
+
+    /**
+     * Ordinals of the products matching the filters, in catalog order, with their relevance if there are keyword hits
+     * Every predicate is a cached bitmap of the snapshot (see ProductFilters), only the keyword hits are
+     * turned into a bitmap per search. The bitmaps are ANDed block by block.
+     */
+    private Matches filter(CatalogSnapshot snapshot, ProductTextIndex.Hits hits, String category,
+                           Double minPrice, Double maxPrice, boolean inStock, boolean onSale) {
+        ProductFilters filters = snapshot.getFilters();
+        ProductBitmap result = sharedFilters(snapshot, hits, inStock, onSale);
+        if (category != null && !category.isEmpty()) {
+            result = and(result, filters.category(category));
+        }
+        if (minPrice != null || maxPrice != null) {
+            result = and(result, filters.priceRange(minPrice, maxPrice));
+        }
+        int[] ordinals = allIfUnfiltered(filters, result).toArray();
+        if (hits == null) {
+            return new Matches(ordinals, null, ordinals.length);
+        }
+
+        // Both lists are in catalog order, the scores of the remaining hits are picked up in one pass
+        float[] scores = new float[ordinals.length];
+        int j = 0;
+        for (int i = 0; i < ordinals.length; i++) {
+            while (hits.ordinal(j) != ordinals[i]) {
+                j++;
             }
+            scores[i] = hits.score(j);
+        }
+        return new Matches(ordinals, scores, ordinals.length);
+    }
+
+    // Keyword hits, sale and stock: the filters that the facet counts never leave out, null when none is set
+    private ProductBitmap sharedFilters(CatalogSnapshot snapshot, ProductTextIndex.Hits hits, boolean inStock, boolean onSale) {
+        ProductFilters filters = snapshot.getFilters();
+        ProductBitmap result = hits != null ? hits.toBitmap(filters.size()) : null;
+        if (onSale) {
+            result = and(result, filters.onSale());
+        }
+        if (inStock) {
+            result = and(result, inStockBitmap(snapshot));
         }
         return result;
     }
 
+    // Either side may be null, which stands for no filter
+    private static ProductBitmap and(ProductBitmap left, ProductBitmap right) {
+        return left == null ? right : right == null ? left : left.and(right);
+    }
+
+    private static ProductBitmap allIfUnfiltered(ProductFilters filters, ProductBitmap result) {
+        return result != null ? result : filters.all();
+    }
+
+    // The in-stock bitmap is rebuilt only after a product sold out or came back since it was built
+    private ProductBitmap inStockBitmap(CatalogSnapshot snapshot) {
+        InStock cached = inStock;
+        long changes = stockChanges.get();
+        if (cached != null && cached.catalogVersion == snapshot.getVersion() && cached.stockChanges == changes) {
+            return cached.bitmap;
+        }
+        ProductColumns columns = snapshot.getColumns();
+        ProductBitmap bitmap = ProductBitmap.matching(columns.size(), columns::inStock);
+        inStock = new InStock(snapshot.getVersion(), changes, bitmap);
+        return bitmap;
+    }
+
+    // Search box completions from the current catalog, ranked by "rating" or "sales"
+    public List<Suggestion> suggest(String prefix, String sortBy, int limit) {
+        return catalog.get().getSuggestions().suggest(prefix, sortBy, limit);
+    }
+
     public List<String> getAllCategories() {
-        return products.stream()
-                .map(Product::getCategory)
-                .distinct()
-                .sorted()
-                .collect(Collectors.toList());
+        return catalog.get().getCategories();
     }
 
     public boolean updateStock(String productId, int quantityToReduce) {
         Product product = getProductById(productId);
-        if (product == null) {
+        AtomicInteger counter = stock.get(productId);
+        if (product == null || counter == null || !take(counter, quantityToReduce)) {
 	        return false;
         }
-        
-        int newStock = product.getStock() - quantityToReduce;
-        if (newStock < 0) {
-	        return false;
+        writeStock(product, counter);
+        persistence.markDirty();
+        return true;
+    }
+
+    /**
+     * Take the stock of all the items or of none of them
+     * Every product is taken with a compare-and-set on its own counter, so checkouts of different products
+     * never wait for each other. If one product is short, the products already taken are put back.
+     * Several items of one product are taken together. Returns false if anything was missing.
+     */
+    public boolean reserveStock(List<CartItem> items) {
+        return reserve(items, false);
+    }
+
+    /**
+     * Take the stock of all the items or of none of them for a checkout hold
+     * Held stock is gone from the available stock like reserved stock, but it is still written to the store:
+     * holds only live in memory, so stock held when the app stops is simply available again after a restart.
+     * Held stock ends with releaseHeldStock or sellHeldStock.
+     */
+    public boolean holdStock(List<CartItem> items) {
+        return reserve(items, true);
+    }
+
+    private boolean reserve(List<CartItem> items, boolean hold) {
+        Map<String, Integer> quantities = new LinkedHashMap<>();
+        for (CartItem item : items) {
+            quantities.merge(item.getProductId(), item.getQuantity(), Integer::sum);
+        }
+        List<Map.Entry<String, Integer>> taken = new ArrayList<>();
+        for (Map.Entry<String, Integer> entry : quantities.entrySet()) {
+            AtomicInteger counter = stock.get(entry.getKey());
+            if (getProductById(entry.getKey()) == null || counter == null || !take(counter, entry.getValue())) {
+                // A concurrent writer may have copied the count while it was taken, so the put back is written too
+                for (Map.Entry<String, Integer> done : taken) {
+                    AtomicInteger doneCounter = stock.get(done.getKey());
+                    put(doneCounter, done.getValue());
+                    writeStock(getProductById(done.getKey()), doneCounter);
+                }
+                if (!taken.isEmpty()) {
+                    persistence.markDirty();
+                }
+                return false;
+            }
+            taken.add(entry);
         }
-        
-        product.setStock(newStock);
-        saveProducts();
+        for (Map.Entry<String, Integer> entry : taken) {
+            if (hold) {
+                held.computeIfAbsent(entry.getKey(), id -> new AtomicInteger()).addAndGet(entry.getValue());
+            }
+            writeStock(getProductById(entry.getKey()), stock.get(entry.getKey()));
+        }
+        persistence.markDirty();
         return true;
     }
 
+    // Put back stock taken by reserveStock, for an order that could not be completed
+    public void releaseStock(List<CartItem> items) {
+        for (CartItem item : items) {
+            AtomicInteger counter = stock.get(item.getProductId());
+            Product product = getProductById(item.getProductId());
+            if (counter != null && product != null && item.getQuantity() > 0) {
+                put(counter, item.getQuantity());
+                writeStock(product, counter);
+            }
+        }
+        persistence.markDirty();
+    }
+
+    // Put back stock taken by holdStock, for a hold that expired or was replaced
+    public void releaseHeldStock(List<CartItem> items) {
+        for (CartItem item : items) {
+            AtomicInteger counter = stock.get(item.getProductId());
+            Product product = getProductById(item.getProductId());
+            if (counter != null && product != null && item.getQuantity() > 0) {
+                put(counter, item.getQuantity());
+                held.get(item.getProductId()).addAndGet(-item.getQuantity());
+                writeStock(product, counter);
+            }
+        }
+        persistence.markDirty();
+    }
+
+    // Turn stock taken by holdStock into sold stock, for the order a hold became
+    public void sellHeldStock(List<CartItem> items) {
+        for (CartItem item : items) {
+            AtomicInteger counter = stock.get(item.getProductId());
+            Product product = getProductById(item.getProductId());
+            if (counter != null && product != null && item.getQuantity() > 0) {
+                held.get(item.getProductId()).addAndGet(-item.getQuantity());
+                writeStock(product, counter);
+            }
+        }
+        persistence.markDirty();
+    }
+
+    // Nothing to take succeeds as before; a negative quantity would add stock and is refused
+    private boolean take(AtomicInteger counter, int quantity) {
+        if (quantity <= 0) {
+            return quantity == 0;
+        }
+        while (true) {
+            int current = counter.get();
+            if (current - quantity < 0) {
+                return false;
+            }
+            if (counter.compareAndSet(current, current - quantity)) {
+                stockChanged(current, current - quantity);
+                return true;
+            }
+        }
+    }
+
+    private void put(AtomicInteger counter, int quantity) {
+        int after = counter.addAndGet(quantity);
+        stockChanged(after - quantity, after);
+    }
+
+    // Concurrent sales of one product may finish out of order, the last writer copies the latest count.
+    // The store gets the available stock plus the held stock, holds do not outlive a restart
+    private void writeStock(Product product, AtomicInteger counter) {
+        synchronized (product) {
+            product.setStock(counter.get());
+            AtomicInteger heldCount = held.get(product.getId());
+            int heldStock = heldCount != null ? heldCount.get() : 0;
+            store.put(product.getId(), heldStock > 0 ? withStock(product, product.getStock() + heldStock) : product);
+        }
+        dataVersion.incrementAndGet();
+    }
+
+    private static Product withStock(Product product, int stock) {
+        Product copy = new Product(product.getId(), product.getName(), product.getDescription(), product.getPrice(),
+                product.getCategory(), product.getImageUrl(), stock, product.getMaterial(),
+                product.getDimensions(), product.getRating(), product.getReviewCount());
+        copy.setDiscount(product.getDiscount());
+        return copy;
+    }
+
+    // Moving between sold out and available invalidates the in-stock bitmap
+    private void stockChanged(int before, int after) {
+        if ((before > 0) != (after > 0)) {
+            stockChanges.incrementAndGet();
+        }
+    }
+
     public boolean checkStock(String productId, int quantity) {
-        Product product = getProductById(productId);
-        return product != null && product.getStock() >= quantity;
+        AtomicInteger counter = stock.get(productId);
+        return counter != null && counter.get() >= quantity;
+    }
+
+    // The first count ordinals are the matches, scores is null without keyword hits
+    static final class Matches {
+        final int[] ordinals;
+        final float[] scores;
+        final int count;
+
+        Matches(int[] ordinals, float[] scores, int count) {
+            this.ordinals = ordinals;
+            this.scores = scores;
+            this.count = count;
+        }
+    }
+
+    private static final class InStock {
+        final long catalogVersion;
+        final long stockChanges;
+        final ProductBitmap bitmap;
+
+        InStock(long catalogVersion, long stockChanges, ProductBitmap bitmap) {
+            this.catalogVersion = catalogVersion;
+            this.stockChanges = stockChanges;
+            this.bitmap = bitmap;
+        }
     }
 }
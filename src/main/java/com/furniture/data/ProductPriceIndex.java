@@ -0,0 +1,49 @@
+package com.furniture.data;
+
+/**
+ * Price index of the catalog: the product prices in ascending order with the matching ordinals
+ * A minPrice/maxPrice filter binary-searches the bounds and yields a contiguous range of the index,
+ * so its cost depends on the number of products in the range, not on the size of the catalog.
+ * Products with the same price are in catalog order.
+ */
+final class ProductPriceIndex {
+    private final double[] prices;
+    private final int[] ordinals;
+
+    ProductPriceIndex(ProductColumns columns) {
+        double[] byOrdinal = columns.prices();
+        this.ordinals = OrdinalSort.ascending(byOrdinal);
+        this.prices = new double[ordinals.length];
+        for (int i = 0; i < ordinals.length; i++) {
+            prices[i] = byOrdinal[ordinals[i]];
+        }
+    }
+
+    int ordinal(int position) {
+        return ordinals[position];
+    }
+
+    // First position whose price is >= min, or the start of the index without a lower bound
+    int from(Double min) {
+        return min == null ? 0 : firstPosition(min, false);
+    }
+
+    // Position after the last price <= max, or the end of the index without an upper bound
+    int to(Double max) {
+        return max == null ? prices.length : firstPosition(max, true);
+    }
+
+    private int firstPosition(double bound, boolean inclusive) {
+        int low = 0;
+        int high = prices.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (prices[mid] < bound || (inclusive && prices[mid] == bound)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
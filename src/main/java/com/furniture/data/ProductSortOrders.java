@@ -0,0 +1,177 @@
+package com.furniture.data;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Precomputed orders of the catalog for the sortBy modes of the product search
+ * Every mode keeps the permutation of all ordinals in its sort order and the rank of every ordinal,
+ * where products with equal keys share a rank. A result is ordered without a Comparator: a large
+ * result is collected by walking the permutation and testing membership, otherwise the best k are
+ * selected by comparing ranks. Either way equal keys keep their relevance and catalog order, like the
+ * stable Comparator sort they replace.
+ */
+final class ProductSortOrders {
+    private final int catalogSize;
+    private final Map<String, Order> orders = new HashMap<>();
+
+    ProductSortOrders(ProductColumns columns) {
+        this.catalogSize = columns.size();
+        double[] prices = columns.prices();
+        double[] ratings = columns.ratings();
+        double[] sales = new double[catalogSize];
+        for (int i = 0; i < sales.length; i++) {
+            sales[i] = columns.reviewCount(i);
+        }
+        orders.put("price_asc", new Order(OrdinalSort.ascending(prices), prices));
+        orders.put("price_desc", new Order(OrdinalSort.descending(prices), prices));
+        orders.put("rating", new Order(OrdinalSort.descending(ratings), ratings));
+        orders.put("sales", new Order(OrdinalSort.descending(sales), sales));
+    }
+
+    /**
+     * Order the first count ordinals and keep the best k of them at the front, returns how many are kept
+     * The order is the sortBy mode (none for an unknown mode), then the relevance scores (highest first,
+     * null without a keyword), then catalog order. Only k results are ever ordered, so the first page of
+     * a large result costs a bounded selection rather than a full sort.
+     * The ordinals must be ascending, scores are given by position.
+     */
+    int top(String sortBy, int[] ordinals, float[] scores, int count, int k) {
+        Order order = sortBy != null ? orders.get(sortBy) : null;
+        int kept = Math.min(count, Math.max(0, k));
+        if (order == null && scores == null) {
+            return kept;
+        }
+        if (order != null && scores == null && count > catalogSize / 16) {
+            order.walk(ordinals, count, kept);
+            return kept;
+        }
+        new Selection(order != null ? order.ranks : null, ordinals, scores).select(count, kept);
+        return kept;
+    }
+
+    private static final class Order {
+        private final int[] permutation;
+        // Ordinal -> rank, equal keys share a rank
+        private final int[] ranks;
+
+        Order(int[] permutation, double[] keys) {
+            this.permutation = permutation;
+            this.ranks = new int[permutation.length];
+            int rank = 0;
+            for (int i = 0; i < permutation.length; i++) {
+                if (i > 0 && Double.compare(keys[permutation[i - 1]], keys[permutation[i]]) != 0) {
+                    rank = i;
+                }
+                ranks[permutation[i]] = rank;
+            }
+        }
+
+        // Ties in the permutation are in catalog order, the walk stops once the first k members are found
+        void walk(int[] ordinals, int count, int k) {
+            BitSet members = new BitSet(permutation.length);
+            for (int i = 0; i < count; i++) {
+                members.set(ordinals[i]);
+            }
+            int n = 0;
+            for (int i = 0; i < permutation.length && n < k; i++) {
+                if (members.get(permutation[i])) {
+                    ordinals[n++] = permutation[i];
+                }
+            }
+        }
+    }
+
+    /**
+     * Bounded selection of the best k positions with a binary heap that has the worst kept position on top
+     * Positions are compared on primitive arrays: rank, then score, then ordinal.
+     */
+    private static final class Selection {
+        private final int[] ranks;
+        private final int[] ordinals;
+        private final float[] scores;
+        private int[] heap;
+        private int size;
+
+        Selection(int[] ranks, int[] ordinals, float[] scores) {
+            this.ranks = ranks;
+            this.ordinals = ordinals;
+            this.scores = scores;
+        }
+
+        void select(int count, int k) {
+            if (k == 0) {
+                return;
+            }
+            heap = new int[k];
+            for (int position = 0; position < count; position++) {
+                if (size < k) {
+                    heap[size] = position;
+                    siftUp(size++);
+                } else if (before(position, heap[0])) {
+                    heap[0] = position;
+                    siftDown(0);
+                }
+            }
+            // Taking the worst off the top fills the result from the back
+            int[] best = new int[k];
+            for (int i = k - 1; i >= 0; i--) {
+                best[i] = ordinals[heap[0]];
+                heap[0] = heap[--size];
+                siftDown(0);
+            }
+            System.arraycopy(best, 0, ordinals, 0, k);
+        }
+
+        private boolean before(int a, int b) {
+            if (ranks != null) {
+                int rankA = ranks[ordinals[a]];
+                int rankB = ranks[ordinals[b]];
+                if (rankA != rankB) {
+                    return rankA < rankB;
+                }
+            }
+            if (scores != null && scores[a] != scores[b]) {
+                return scores[a] > scores[b];
+            }
+            return ordinals[a] < ordinals[b];
+        }
+
+        private void siftUp(int i) {
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (!before(heap[parent], heap[i])) {
+                    return;
+                }
+                swap(i, parent);
+                i = parent;
+            }
+        }
+
+        private void siftDown(int i) {
+            while (true) {
+                int worst = i;
+                int left = 2 * i + 1;
+                int right = left + 1;
+                if (left < size && before(heap[worst], heap[left])) {
+                    worst = left;
+                }
+                if (right < size && before(heap[worst], heap[right])) {
+                    worst = right;
+                }
+                if (worst == i) {
+                    return;
+                }
+                swap(i, worst);
+                i = worst;
+            }
+        }
+
+        private void swap(int i, int j) {
+            int t = heap[i];
+            heap[i] = heap[j];
+            heap[j] = t;
+        }
+    }
+}
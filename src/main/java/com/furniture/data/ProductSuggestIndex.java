@@ -0,0 +1,232 @@
+package com.furniture.data;
+
+import com.furniture.model.Product;
+import com.furniture.model.Suggestion;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Completion index of the distinct product names and categories of a catalog snapshot
+ * Every word of a suggestion starts a key ("fabric sofa" and "sofa" for "Fabric Sofa"), and the keys are
+ * kept sorted by their text: a flattened prefix trie in which the keys under a prefix form one contiguous
+ * range found by binary search. A segment tree per ranking holds the best key of every node, so the top N
+ * of a range are found by popping N subranges off a heap, however many keys the prefix covers.
+ */
+final class ProductSuggestIndex {
+    private static final String PRODUCT = "product";
+    private static final String CATEGORY = "category";
+    private static final String DEFAULT_RANKING = "sales";
+
+    private final List<Suggestion> suggestions = new ArrayList<>();
+    // Lowercased text of every suggestion, the keys point into it
+    private final String[] folded;
+    // Key k is the text of suggestion keySuggestion[k] from character keyOffset[k] on
+    private final int[] keySuggestion;
+    private final int[] keyOffset;
+    private final Map<String, Ranking> rankings = new HashMap<>();
+
+    ProductSuggestIndex(List<Product> products) {
+        // A name shared by several products ranks by their best rating and the sales of all of them
+        Map<String, Integer> byText = new HashMap<>();
+        double[] rating = new double[16];
+        double[] sales = new double[16];
+        for (Product product : products) {
+            for (String type : new String[]{PRODUCT, CATEGORY}) {
+                String text = type.equals(PRODUCT) ? product.getName() : product.getCategory();
+                if (text == null || text.isEmpty()) {
+                    continue;
+                }
+                Integer index = byText.get(type + ':' + text);
+                if (index == null) {
+                    index = suggestions.size();
+                    byText.put(type + ':' + text, index);
+                    suggestions.add(new Suggestion(text, type, type.equals(PRODUCT) ? product.getId() : null));
+                    if (index == rating.length) {
+                        rating = Arrays.copyOf(rating, index * 2);
+                        sales = Arrays.copyOf(sales, index * 2);
+                    }
+                } else if (type.equals(PRODUCT)) {
+                    suggestions.get(index).setProductId(null);
+                }
+                rating[index] = Math.max(rating[index], product.getRating());
+                sales[index] += product.getReviewCount();
+            }
+        }
+
+        this.folded = new String[suggestions.size()];
+        int keyCount = 0;
+        for (int i = 0; i < folded.length; i++) {
+            folded[i] = suggestions.get(i).getText().toLowerCase(Locale.ROOT);
+            for (int offset = 0; offset < folded[i].length(); offset++) {
+                keyCount += isWordStart(folded[i], offset) ? 1 : 0;
+            }
+        }
+        Integer[] keys = new Integer[keyCount];
+        int[] suggestionOf = new int[keyCount];
+        int[] offsetOf = new int[keyCount];
+        int k = 0;
+        for (int i = 0; i < folded.length; i++) {
+            for (int offset = 0; offset < folded[i].length(); offset++) {
+                if (isWordStart(folded[i], offset)) {
+                    keys[k] = k;
+                    suggestionOf[k] = i;
+                    offsetOf[k] = offset;
+                    k++;
+                }
+            }
+        }
+        Arrays.parallelSort(keys, (a, b) -> compareKeys(suggestionOf[a], offsetOf[a], suggestionOf[b], offsetOf[b]));
+        this.keySuggestion = new int[keyCount];
+        this.keyOffset = new int[keyCount];
+        for (k = 0; k < keyCount; k++) {
+            keySuggestion[k] = suggestionOf[keys[k]];
+            keyOffset[k] = offsetOf[keys[k]];
+        }
+        rankings.put("rating", new Ranking(rating));
+        rankings.put("sales", new Ranking(sales));
+    }
+
+    private static boolean isWordStart(String text, int offset) {
+        return Character.isLetterOrDigit(text.charAt(offset))
+                && (offset == 0 || !Character.isLetterOrDigit(text.charAt(offset - 1)));
+    }
+
+    private int compareKeys(int s1, int o1, int s2, int o2) {
+        String a = folded[s1];
+        String b = folded[s2];
+        int length = Math.min(a.length() - o1, b.length() - o2);
+        for (int i = 0; i < length; i++) {
+            int diff = a.charAt(o1 + i) - b.charAt(o2 + i);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return (a.length() - o1) - (b.length() - o2);
+    }
+
+    // 0 if key k starts with the prefix, otherwise the order of the key relative to the prefix
+    private int comparePrefix(int k, String prefix) {
+        String text = folded[keySuggestion[k]];
+        int offset = keyOffset[k];
+        int length = Math.min(text.length() - offset, prefix.length());
+        for (int i = 0; i < length; i++) {
+            int diff = text.charAt(offset + i) - prefix.charAt(i);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return length == prefix.length() ? 0 : -1;
+    }
+
+    // First key that is not before the prefix (upper = false) or not in it (upper = true)
+    private int bound(String prefix, boolean upper) {
+        int low = 0;
+        int high = keySuggestion.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            int cmp = comparePrefix(mid, prefix);
+            if (cmp < 0 || (upper && cmp == 0)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * The best limit suggestions with a word starting with the prefix
+     * sortBy is "rating" or "sales" (the default), ties go to the alphabetically first suggestion.
+     */
+    List<Suggestion> suggest(String prefix, String sortBy, int limit) {
+        List<Suggestion> result = new ArrayList<>();
+        String normalized = prefix != null ? prefix.trim().toLowerCase(Locale.ROOT) : "";
+        if (normalized.isEmpty() || limit <= 0) {
+            return result;
+        }
+        Ranking ranking = rankings.getOrDefault(sortBy != null ? sortBy : DEFAULT_RANKING, rankings.get(DEFAULT_RANKING));
+        int from = bound(normalized, false);
+        int to = bound(normalized, true);
+
+        // Each heap entry is a key range and its best key, a popped range is split around that key
+        PriorityQueue<int[]> ranges = new PriorityQueue<>((a, b) -> ranking.compare(b[2], a[2]));
+        BitSet seen = new BitSet();
+        if (from < to) {
+            ranges.add(new int[]{from, to, ranking.best(from, to)});
+        }
+        while (!ranges.isEmpty() && result.size() < limit) {
+            int[] range = ranges.poll();
+            int suggestion = keySuggestion[range[2]];
+            // Several words of one suggestion may start with the prefix
+            if (!seen.get(suggestion)) {
+                seen.set(suggestion);
+                result.add(suggestions.get(suggestion));
+            }
+            if (range[0] < range[2]) {
+                ranges.add(new int[]{range[0], range[2], ranking.best(range[0], range[2])});
+            }
+            if (range[2] + 1 < range[1]) {
+                ranges.add(new int[]{range[2] + 1, range[1], ranking.best(range[2] + 1, range[1])});
+            }
+        }
+        return result;
+    }
+
+    // Segment tree over the keys holding the best key of every node by one score
+    private final class Ranking {
+        private final double[] scores;
+        private final int leaves;
+        private final int[] tree;
+
+        Ranking(double[] scores) {
+            this.scores = scores;
+            int n = 1;
+            while (n < keySuggestion.length) {
+                n <<= 1;
+            }
+            this.leaves = n;
+            this.tree = new int[2 * n];
+            Arrays.fill(tree, -1);
+            for (int k = 0; k < keySuggestion.length; k++) {
+                tree[n + k] = k;
+            }
+            for (int node = n - 1; node > 0; node--) {
+                tree[node] = better(tree[2 * node], tree[2 * node + 1]);
+            }
+        }
+
+        // Positive if key a ranks before key b
+        int compare(int a, int b) {
+            int cmp = Double.compare(scores[keySuggestion[a]], scores[keySuggestion[b]]);
+            return cmp != 0 ? cmp : Integer.compare(b, a);
+        }
+
+        private int better(int a, int b) {
+            if (a < 0 || b < 0) {
+                return a < 0 ? b : a;
+            }
+            return compare(a, b) >= 0 ? a : b;
+        }
+
+        // Best key in from..to-1
+        int best(int from, int to) {
+            int result = -1;
+            for (int low = from + leaves, high = to + leaves; low < high; low >>= 1, high >>= 1) {
+                if ((low & 1) == 1) {
+                    result = better(result, tree[low++]);
+                }
+                if ((high & 1) == 1) {
+                    result = better(result, tree[--high]);
+                }
+            }
+            return result;
+        }
+    }
+}
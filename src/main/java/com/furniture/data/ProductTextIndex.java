@@ -0,0 +1,282 @@
+package com.furniture.data;
+
+import com.furniture.model.Product;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Inverted index over the searchable text of the catalog: name, category, material and description
+ * Text is split into lowercase letter/digit tokens. Every term keeps a posting list of the ordinals
+ * of the products containing it, in ascending order, with a score per product weighted by the field
+ * the term was found in. A query token matches every term it is a prefix of ("sofa" finds "sofas"),
+ * several query tokens must all match (AND), and a hit scores the sum of its tokens' scores.
+ */
+final class ProductTextIndex {
+    private static final float NAME_WEIGHT = 4f;
+    private static final float CATEGORY_WEIGHT = 3f;
+    private static final float MATERIAL_WEIGHT = 2f;
+    private static final float DESCRIPTION_WEIGHT = 1f;
+
+    // Sorted terms, postings[i] and scores[i] belong to terms[i]
+    private final String[] terms;
+    private final int[][] postings;
+    private final float[][] scores;
+    // Built on the first fuzzy search, most snapshots never need it
+    private volatile TrigramIndex trigrams;
+
+    ProductTextIndex(List<Product> products) {
+        Map<String, PostingBuilder> index = new HashMap<>();
+        for (int ordinal = 0; ordinal < products.size(); ordinal++) {
+            Product product = products.get(ordinal);
+            addTokens(index, ordinal, product.getName(), NAME_WEIGHT);
+            addTokens(index, ordinal, product.getCategory(), CATEGORY_WEIGHT);
+            addTokens(index, ordinal, product.getMaterial(), MATERIAL_WEIGHT);
+            addTokens(index, ordinal, product.getDescription(), DESCRIPTION_WEIGHT);
+        }
+        this.terms = index.keySet().toArray(new String[0]);
+        Arrays.sort(terms);
+        this.postings = new int[terms.length][];
+        this.scores = new float[terms.length][];
+        for (int i = 0; i < terms.length; i++) {
+            PostingBuilder builder = index.get(terms[i]);
+            postings[i] = Arrays.copyOf(builder.ordinals, builder.size);
+            scores[i] = Arrays.copyOf(builder.scores, builder.size);
+        }
+    }
+
+    private static void addTokens(Map<String, PostingBuilder> index, int ordinal, String text, float weight) {
+        for (String token : tokenize(text)) {
+            index.computeIfAbsent(token, t -> new PostingBuilder()).add(ordinal, weight);
+        }
+    }
+
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+        text = text.toLowerCase(Locale.ROOT);
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean tokenChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (tokenChar && start < 0) {
+                start = i;
+            } else if (!tokenChar && start >= 0) {
+                tokens.add(text.substring(start, i));
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Products matching every token of the query, in catalog order with their relevance scores
+     * Ranking is left to the caller, which usually only needs the best few after its other filters.
+     * Returns null if the query has no tokens at all, so that the caller can skip the keyword filter.
+     */
+    Hits search(String query) {
+        return search(query, false);
+    }
+
+    /**
+     * Like search(query), but in fuzzy mode a token also matches the terms within a few typos of it
+     * (see TrigramIndex). A term found that way scores its weight divided by one plus its distance.
+     */
+    Hits search(String query, boolean fuzzy) {
+        List<String> tokens = tokenize(query);
+        if (tokens.isEmpty()) {
+            return null;
+        }
+        Hits result = null;
+        for (String token : tokens) {
+            Hits hits = fuzzy ? matchFuzzy(token) : match(token);
+            result = result == null ? hits : result.intersect(hits);
+            if (result.size == 0) {
+                break;
+            }
+        }
+        return result;
+    }
+
+    // Products containing a term that starts with the token, with their best score among those terms
+    private Hits match(String token) {
+        int from = lowerBound(token);
+        int to = prefixEnd(from, token);
+        if (to - from == 1) {
+            return new Hits(postings[from], scores[from], postings[from].length);
+        }
+        int[] matched = new int[to - from];
+        float[] factors = new float[matched.length];
+        for (int t = from; t < to; t++) {
+            matched[t - from] = t;
+            factors[t - from] = 1f;
+        }
+        return merge(matched, factors, matched.length);
+    }
+
+    // The prefix matches of the token plus the terms within its typo allowance
+    private Hits matchFuzzy(String token) {
+        TrigramIndex index = trigrams;
+        if (index == null) {
+            synchronized (this) {
+                if (trigrams == null) {
+                    trigrams = new TrigramIndex(terms);
+                }
+                index = trigrams;
+            }
+        }
+        int[][] similar = index.similar(token, TrigramIndex.maxEdits(token.length()));
+        int from = lowerBound(token);
+        int to = prefixEnd(from, token);
+        int[] matched = new int[to - from + similar[0].length];
+        float[] factors = new float[matched.length];
+        int n = 0;
+        for (int t = from; t < to; t++) {
+            matched[n] = t;
+            factors[n++] = 1f;
+        }
+        for (int i = 0; i < similar[0].length; i++) {
+            if (similar[0][i] < from || similar[0][i] >= to) {
+                matched[n] = similar[0][i];
+                factors[n++] = 1f / (1 + similar[1][i]);
+            }
+        }
+        return merge(matched, factors, n);
+    }
+
+    // Union of the postings of the first count terms, a product scores its best (factor-weighted) score
+    private Hits merge(int[] matched, float[] factors, int count) {
+        int total = 0;
+        for (int m = 0; m < count; m++) {
+            total += postings[matched[m]].length;
+        }
+        // Ordinal in the high half, score bits in the low half: sorting groups the postings by product
+        long[] merged = new long[total];
+        int n = 0;
+        for (int m = 0; m < count; m++) {
+            int t = matched[m];
+            for (int i = 0; i < postings[t].length; i++) {
+                float score = scores[t][i] * factors[m];
+                merged[n++] = ((long) postings[t][i] << 32) | (Float.floatToIntBits(score) & 0xffffffffL);
+            }
+        }
+        Arrays.sort(merged);
+        Hits hits = new Hits(new int[total], new float[total], 0);
+        for (long entry : merged) {
+            int ordinal = (int) (entry >>> 32);
+            float score = Float.intBitsToFloat((int) entry);
+            if (hits.size > 0 && hits.ordinals[hits.size - 1] == ordinal) {
+                hits.scores[hits.size - 1] = Math.max(hits.scores[hits.size - 1], score);
+            } else {
+                hits.ordinals[hits.size] = ordinal;
+                hits.scores[hits.size] = score;
+                hits.size++;
+            }
+        }
+        return hits;
+    }
+
+    // End of the run of terms starting with the token that begins at from
+    private int prefixEnd(int from, String token) {
+        int to = from;
+        while (to < terms.length && terms[to].startsWith(token)) {
+            to++;
+        }
+        return to;
+    }
+
+    private int lowerBound(String token) {
+        int low = 0;
+        int high = terms.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (terms[mid].compareTo(token) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Matching product ordinals in ascending order with their scores
+     * The arrays may be the index's own postings, they are never modified.
+     */
+    static final class Hits {
+        private final int[] ordinals;
+        private final float[] scores;
+        private int size;
+
+        Hits(int[] ordinals, float[] scores, int size) {
+            this.ordinals = ordinals;
+            this.scores = scores;
+            this.size = size;
+        }
+
+        int size() {
+            return size;
+        }
+
+        int ordinal(int i) {
+            return ordinals[i];
+        }
+
+        float score(int i) {
+            return scores[i];
+        }
+
+        // The hit ordinals as a bitmap over a catalog of the given size
+        ProductBitmap toBitmap(int catalogSize) {
+            return ProductBitmap.of(ordinals, size, catalogSize);
+        }
+
+        private Hits intersect(Hits other) {
+            int[] resultOrdinals = new int[Math.min(size, other.size)];
+            float[] resultScores = new float[resultOrdinals.length];
+            int n = 0;
+            int i = 0;
+            int j = 0;
+            while (i < size && j < other.size) {
+                if (ordinals[i] < other.ordinals[j]) {
+                    i++;
+                } else if (ordinals[i] > other.ordinals[j]) {
+                    j++;
+                } else {
+                    resultOrdinals[n] = ordinals[i];
+                    resultScores[n] = scores[i] + other.scores[j];
+                    n++;
+                    i++;
+                    j++;
+                }
+            }
+            return new Hits(resultOrdinals, resultScores, n);
+        }
+    }
+
+    private static final class PostingBuilder {
+        private int[] ordinals = new int[4];
+        private float[] scores = new float[4];
+        private int size;
+
+        // Products are added in ordinal order, so a repeated term of the same product is the last entry
+        void add(int ordinal, float score) {
+            if (size > 0 && ordinals[size - 1] == ordinal) {
+                scores[size - 1] += score;
+                return;
+            }
+            if (size == ordinals.length) {
+                ordinals = Arrays.copyOf(ordinals, size * 2);
+                scores = Arrays.copyOf(scores, size * 2);
+            }
+            ordinals[size] = ordinal;
+            scores[size] = score;
+            size++;
+        }
+    }
+}
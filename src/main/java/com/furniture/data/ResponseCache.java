@@ -0,0 +1,122 @@
+package com.furniture.data;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded LRU cache of serialized API responses
+ * The cache is bounded by entry count and by the total size of the cached bodies; the least recently used
+ * entries go first. A body larger than a sixteenth of the byte budget (an unpaged search over a big
+ * catalog) is not cached at all, so a few such responses cannot push out everything else.
+ * Every entry is tagged with the data version it was rendered from (see ProductManager.getCatalogVersion).
+ * A lookup with a newer version drops the entry instead of serving it, so a cached response is never older
+ * than the data; a lookup with an older version just misses. Callers must read the version before they compute the response they put.
+ */
+public final class ResponseCache {
+    private final int capacity;
+    private final long maxBytes;
+    private final long maxEntryBytes;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    // Size of the cached keys and bodies, guarded by entries
+    private long bytes;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong stale = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong tooLarge = new AtomicLong();
+
+    ResponseCache(int capacity, long maxBytes) {
+        this.capacity = capacity;
+        this.maxBytes = maxBytes;
+        this.maxEntryBytes = maxBytes / 16;
+    }
+
+    // Strings take up to two bytes per char, the estimate does not depend on how the JVM stores them
+    private static long sizeOf(String key, String body) {
+        return 2L * (key.length() + body.length());
+    }
+
+    // The response cached for the key at this version, null if there is none
+    public String get(String key, long version) {
+        if (capacity <= 0 || maxBytes <= 0) {
+            return null;
+        }
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.version == version) {
+                hits.incrementAndGet();
+                return entry.body;
+            }
+            // Only an older entry is stale; a newer one was just put by a reader of newer data and stays
+            if (entry != null && entry.version < version) {
+                entries.remove(key);
+                bytes -= sizeOf(key, entry.body);
+                stale.incrementAndGet();
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    public void put(String key, long version, String body) {
+        if (capacity <= 0 || maxBytes <= 0) {
+            return;
+        }
+        long size = sizeOf(key, body);
+        if (size > maxEntryBytes) {
+            tooLarge.incrementAndGet();
+            return;
+        }
+        synchronized (entries) {
+            Entry current = entries.get(key);
+            // A slower request rendered from older data must not replace a newer response
+            if (current == null || current.version <= version) {
+                entries.put(key, new Entry(version, body));
+                bytes += size - (current != null ? sizeOf(key, current.body) : 0);
+                evictEldest();
+            }
+        }
+    }
+
+    // Caller holds the entries lock
+    private void evictEldest() {
+        Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+        while ((entries.size() > capacity || bytes > maxBytes) && eldest.hasNext()) {
+            Map.Entry<String, Entry> entry = eldest.next();
+            bytes -= sizeOf(entry.getKey(), entry.getValue().body);
+            eldest.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    Map<String, Object> getStats() {
+        long hitCount = hits.get();
+        long lookups = hitCount + misses.get();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        synchronized (entries) {
+            stats.put("size", entries.size());
+            stats.put("bytes", bytes);
+        }
+        stats.put("capacity", capacity);
+        stats.put("maxBytes", maxBytes);
+        stats.put("hits", hitCount);
+        stats.put("misses", misses.get());
+        stats.put("hitRate", lookups > 0 ? (double) hitCount / lookups : 0.0);
+        stats.put("staleDrops", stale.get());
+        stats.put("evictions", evictions.get());
+        stats.put("tooLarge", tooLarge.get());
+        return stats;
+    }
+
+    private static final class Entry {
+        private final long version;
+        private final String body;
+
+        Entry(long version, String body) {
+            this.version = version;
+            this.body = body;
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.furniture.data;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Login sessions: token -> user id, with sliding expiry and a capacity bound
+ * Tokens are hashed into shards, each a concurrent map plus the queue of its tokens in creation order.
+ * A lookup is a map read and a timestamp write, it never locks. A session expires once it has not been
+ * used for the TTL: its timeout on the timing wheel checks the last use and re-arms itself for the rest
+ * of the TTL if the session was used meanwhile. A shard that is full drops its oldest session.
+ */
+public class SessionStore {
+    private static final int SHARDS = 16;
+    // Last use is only written when it moves by this much, most requests of a session read it only
+    private static final long TOUCH_GRANULARITY_MILLIS = 1000;
+
+    private final long ttlMillis;
+    private final int capacity;
+    private final Shard[] shards = new Shard[SHARDS];
+    private final TimingWheel<Session> expiry;
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong expired = new AtomicLong();
+    private final AtomicLong evicted = new AtomicLong();
+    private final AtomicLong loggedOut = new AtomicLong();
+
+    SessionStore(long ttlMillis, int capacity) {
+        this.ttlMillis = Math.max(1000L, ttlMillis);
+        this.capacity = Math.max(SHARDS, capacity);
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new Shard();
+        }
+        this.expiry = new TimingWheel<>("session-expiry", 1000, 512, this::expire);
+    }
+
+    private Shard shardFor(String token) {
+        int h = token.hashCode();
+        return shards[(h ^ (h >>> 16)) & (SHARDS - 1)];
+    }
+
+    public void put(String token, String userId) {
+        Session session = new Session(token, userId, System.currentTimeMillis());
+        Shard shard = shardFor(token);
+        if (shard.sessions.put(token, session) == null) {
+            active.incrementAndGet();
+        }
+        shard.order.add(session);
+        shard.queued.incrementAndGet();
+        created.incrementAndGet();
+        // Over capacity: the oldest sessions of the shard go first
+        while (shard.sessions.size() > capacity / SHARDS) {
+            Session oldest = shard.order.poll();
+            if (oldest == null) {
+                break;
+            }
+            shard.queued.decrementAndGet();
+            if (drop(oldest)) {
+                evicted.incrementAndGet();
+            }
+        }
+        // Sessions that expired or logged out stay queued, they are swept once they outnumber the live ones
+        if (shard.queued.get() > 2 * shard.sessions.size() + 64) {
+            shard.sweep();
+        }
+        arm(session, ttlMillis);
+    }
+
+    // User id of a live session, null for an unknown or expired token; a hit extends the session
+    public String get(String token) {
+        if (token == null) {
+            return null;
+        }
+        Session session = shardFor(token).sessions.get(token);
+        if (session == null) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        long lastUsed = session.lastUsed;
+        if (now - lastUsed >= ttlMillis) {
+            // Expired before the wheel got to it
+            if (drop(session)) {
+                expired.incrementAndGet();
+            }
+            return null;
+        }
+        if (now - lastUsed >= TOUCH_GRANULARITY_MILLIS) {
+            session.lastUsed = now;
+        }
+        return session.userId;
+    }
+
+    public void remove(String token) {
+        Session session = token != null ? shardFor(token).sessions.get(token) : null;
+        if (session != null && drop(session)) {
+            loggedOut.incrementAndGet();
+        }
+    }
+
+    // Stop expiring sessions, on shutdown
+    void stop() {
+        expiry.stop();
+    }
+
+    Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("active", active.get());
+        stats.put("capacity", capacity);
+        stats.put("ttlSeconds", ttlMillis / 1000);
+        stats.put("created", created.get());
+        stats.put("expired", expired.get());
+        stats.put("evicted", evicted.get());
+        stats.put("loggedOut", loggedOut.get());
+        stats.put("pendingTimeouts", expiry.pending());
+        return stats;
+    }
+
+    private void expire(Session session) {
+        long idle = System.currentTimeMillis() - session.lastUsed;
+        if (idle < ttlMillis) {
+            // Used since the timeout was set, wait for the rest of the TTL from the last use
+            if (shardFor(session.token).sessions.get(session.token) == session) {
+                arm(session, ttlMillis - idle);
+            }
+            return;
+        }
+        if (drop(session)) {
+            expired.incrementAndGet();
+        }
+    }
+
+    // Set the session's timeout; a session dropped meanwhile has missed it in drop, so it is cancelled here
+    private void arm(Session session, long delayMillis) {
+        TimingWheel.Timeout<Session> timeout = expiry.schedule(session, delayMillis);
+        session.timeout = timeout;
+        if (shardFor(session.token).sessions.get(session.token) != session) {
+            timeout.cancel();
+        }
+    }
+
+    // Remove exactly this session, false if it was already gone; its queue entry is left to the sweep.
+    // Its timeout is cancelled, so the wheel lets go of it on its next pass instead of holding it for the TTL
+    private boolean drop(Session session) {
+        if (shardFor(session.token).sessions.remove(session.token, session)) {
+            active.decrementAndGet();
+            TimingWheel.Timeout<Session> timeout = session.timeout;
+            if (timeout != null) {
+                timeout.cancel();
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private static final class Shard {
+        private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+        private final Queue<Session> order = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger queued = new AtomicInteger();
+
+        synchronized void sweep() {
+            order.removeIf(session -> sessions.get(session.token) != session);
+            queued.set(order.size());
+        }
+    }
+
+    private static final class Session {
+        private final String token;
+        private final String userId;
+        private volatile long lastUsed;
+        private volatile TimingWheel.Timeout<Session> timeout;
+
+        Session(String token, String userId, long now) {
+            this.token = token;
+            this.userId = userId;
+            this.lastUsed = now;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.furniture.data;
+
+import com.furniture.model.CartItem;
+import com.furniture.model.Product;
+import com.furniture.model.User;
+
+import java.util.List;
+
+/**
+ * Storage engine SPI
+ * The managers keep their data in memory and hand every mutation to the engine; the engine decides
+ * how it reaches the disk. The engine is chosen with -Dfurniture.storage.engine=json|kv.
+ */
+public interface StorageEngine {
+
+    String getName();
+
+    // Products keyed by product id
+    EntityStore<Product> products();
+
+    // Users keyed by user id
+    EntityStore<User> users();
+
+    // Cart contents keyed by user id
+    EntityStore<List<CartItem>> carts();
+
+    OrderStore orders();
+
+    // Flush and release the files, called once at shutdown
+    void close();
+}
@@ -0,0 +1,155 @@
+package com.furniture.data;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Streaming loader for the JSON data files
+ * Records are decoded one at a time from a token reader and handed to the caller, so loading never
+ * holds the whole file as a String. Large files report their progress, and a corrupt or truncated
+ * record ends the load with every record before it kept instead of discarding the whole file.
+ */
+final class StreamingJsonLoader {
+    // Files above this size log their progress every 10%
+    private static final long PROGRESS_MIN_BYTES = 8L * 1024 * 1024;
+
+    private static final Gson GSON = new Gson();
+
+    private StreamingJsonLoader() {}
+
+    /**
+     * Read the array under the root key of { "<root>": [record, ...] }
+     * Returns the number of records read, or -1 if the file is missing or not readable at all.
+     */
+    static <V> int readArray(Path path, String root, Type recordType, Consumer<V> sink) {
+        return read(path, root, (reader, progress) -> {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (!reader.nextName().equals(root) || reader.peek() != JsonToken.BEGIN_ARRAY) {
+                    reader.skipValue();
+                    continue;
+                }
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    V record = GSON.fromJson(reader, recordType);
+                    sink.accept(record);
+                    progress.recordRead();
+                }
+                reader.endArray();
+            }
+            reader.endObject();
+        });
+    }
+
+    /**
+     * Read an object of the form { "<key>": value, ... }
+     */
+    static <V> int readObject(Path path, String label, Type valueType, BiConsumer<String, V> sink) {
+        return read(path, label, (reader, progress) -> {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String key = reader.nextName();
+                V value = GSON.fromJson(reader, valueType);
+                sink.accept(key, value);
+                progress.recordRead();
+            }
+            reader.endObject();
+        });
+    }
+
+    private static int read(Path path, String label, Body body) {
+        if (!Files.exists(path)) {
+            return -1;
+        }
+        Progress progress = null;
+        try (CountingInputStream in = new CountingInputStream(Files.newInputStream(path));
+             JsonReader reader = new JsonReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            progress = new Progress(label, Files.size(path), in);
+            body.read(reader, progress);
+            progress.finish();
+            return progress.count;
+        } catch (IOException | JsonParseException | IllegalStateException e) {
+            if (progress == null || progress.count == 0) {
+                System.err.println("Failed to load " + label + " data: " + e.getMessage());
+                return -1;
+            }
+            System.err.println("Stopped loading " + label + " at a corrupt record, kept the first "
+                    + progress.count + " records: " + e.getMessage());
+            return progress.count;
+        }
+    }
+
+    private interface Body {
+        void read(JsonReader reader, Progress progress) throws IOException;
+    }
+
+    private static class Progress {
+        private final String label;
+        private final long totalBytes;
+        private final CountingInputStream in;
+        private int count;
+        private int reportedTenth;
+
+        Progress(String label, long totalBytes, CountingInputStream in) {
+            this.label = label;
+            this.totalBytes = totalBytes;
+            this.in = in;
+        }
+
+        void recordRead() {
+            count++;
+            if (totalBytes >= PROGRESS_MIN_BYTES) {
+                int tenth = (int) (in.bytesRead * 10 / totalBytes);
+                if (tenth > reportedTenth) {
+                    reportedTenth = tenth;
+                    System.out.println("Loading " + label + ": " + (tenth * 10) + "% (" + count + " records)");
+                }
+            }
+        }
+
+        void finish() {
+            if (totalBytes >= PROGRESS_MIN_BYTES) {
+                System.out.println("Loaded " + count + " " + label + " records");
+            }
+        }
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+        private long bytesRead;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                bytesRead++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int n = super.read(buffer, offset, length);
+            if (n > 0) {
+                bytesRead += n;
+            }
+            return n;
+        }
+    }
+}
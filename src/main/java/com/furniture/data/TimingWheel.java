@@ -0,0 +1,182 @@
+package com.furniture.data;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Hashed timing wheel: expires large numbers of timeouts with one thread and no per-timeout timer
+ * Time is cut into ticks and the wheel into slots, a timeout is put into the slot of its deadline tick
+ * (modulo the number of slots). Each tick the wheel thread looks at one slot only and fires the timeouts
+ * whose deadline has come, the others wait there for a later round. A timeout costs one small object,
+ * scheduling and cancelling are O(1), and a timeout fires at most one tick late.
+ */
+final class TimingWheel<T> {
+    private final String name;
+    private final long tickMillis;
+    private final List<Timeout<T>>[] slots;
+    private final Consumer<T> onExpire;
+    private final long startMillis;
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicLong handlerFailures = new AtomicLong();
+    private final Thread worker;
+    // Last tick whose slot has been processed, only written while holding that slot's lock
+    private volatile long processedTick = -1;
+    // The wheel thread waits for the next tick on this lock, stop wakes it up early
+    private final Object sleeper = new Object();
+    private boolean running = true;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    TimingWheel(String name, long tickMillis, int slotCount, Consumer<T> onExpire) {
+        this.name = name;
+        this.tickMillis = Math.max(1L, tickMillis);
+        this.slots = new List[Math.max(1, slotCount)];
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = new ArrayList<>();
+        }
+        this.onExpire = onExpire;
+        this.startMillis = System.currentTimeMillis();
+        this.worker = new Thread(this::run, name);
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    // Fire onExpire with the value once delayMillis have passed, unless the timeout is cancelled first
+    Timeout<T> schedule(T value, long delayMillis) {
+        long deadline = System.currentTimeMillis() + Math.max(0L, delayMillis);
+        Timeout<T> timeout = new Timeout<>(value, deadline, this);
+        long deadlineTick = (deadline - startMillis + tickMillis - 1) / tickMillis;
+        pending.incrementAndGet();
+        while (true) {
+            // A tick that is already processed will not be looked at again until the next round
+            long tick = Math.max(deadlineTick, processedTick + 1);
+            List<Timeout<T>> slot = slots[(int) (tick % slots.length)];
+            synchronized (slot) {
+                if (tick > processedTick) {
+                    timeout.tick = tick;
+                    slot.add(timeout);
+                    break;
+                }
+            }
+        }
+        return timeout;
+    }
+
+    int pending() {
+        return pending.get();
+    }
+
+    // Stop the wheel thread and wait for it, a handler that is running completes and pending timeouts never fire.
+    // The thread is woken rather than interrupted, an interrupt would close any file channel a handler is writing
+    void stop() {
+        synchronized (sleeper) {
+            running = false;
+            sleeper.notifyAll();
+        }
+        try {
+            worker.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        while (true) {
+            long now = System.currentTimeMillis();
+            long currentTick = (now - startMillis) / tickMillis;
+            // Catch up on every tick that has passed, a slow round must not skip a slot
+            for (long tick = processedTick + 1; tick <= currentTick; tick++) {
+                expire(tick);
+            }
+            long sleepMillis = startMillis + (currentTick + 1) * tickMillis - System.currentTimeMillis();
+            synchronized (sleeper) {
+                if (!running) {
+                    return;
+                }
+                try {
+                    sleeper.wait(Math.max(1L, sleepMillis));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void expire(long tick) {
+        List<Timeout<T>> expired = new ArrayList<>();
+        List<Timeout<T>> slot = slots[(int) (tick % slots.length)];
+        synchronized (slot) {
+            processedTick = tick;
+            Iterator<Timeout<T>> it = slot.iterator();
+            while (it.hasNext()) {
+                Timeout<T> timeout = it.next();
+                if (timeout.isCancelled()) {
+                    it.remove();
+                } else if (timeout.tick <= tick) {
+                    it.remove();
+                    expired.add(timeout);
+                }
+            }
+        }
+        for (Timeout<T> timeout : expired) {
+            if (timeout.done.compareAndSet(false, true)) {
+                pending.decrementAndGet();
+                try {
+                    onExpire.accept(timeout.value);
+                } catch (RuntimeException e) {
+                    reportFailure(e);
+                }
+            }
+        }
+    }
+
+    // A handler that keeps failing would flood stderr from the wheel thread, only the 1st, 2nd, 4th, 8th... are printed
+    private void reportFailure(RuntimeException e) {
+        long failures = handlerFailures.incrementAndGet();
+        if ((failures & (failures - 1)) == 0) {
+            System.err.println("Timeout handler of " + name + " failed (" + failures + " failures so far): " + e);
+        }
+    }
+
+    /**
+     * A scheduled expiry, it either fires or is cancelled, never both
+     */
+    static final class Timeout<T> {
+        private final T value;
+        private final long deadline;
+        private final TimingWheel<T> wheel;
+        // Set once the timeout has fired or been cancelled
+        private final AtomicBoolean done = new AtomicBoolean();
+        private volatile boolean cancelled;
+        private long tick;
+
+        private Timeout(T value, long deadline, TimingWheel<T> wheel) {
+            this.value = value;
+            this.deadline = deadline;
+            this.wheel = wheel;
+        }
+
+        long getDeadline() {
+            return deadline;
+        }
+
+        // False if the timeout has already fired or been cancelled; the wheel drops it when it next passes its slot
+        boolean cancel() {
+            if (!done.compareAndSet(false, true)) {
+                return false;
+            }
+            cancelled = true;
+            wheel.pending.decrementAndGet();
+            return true;
+        }
+
+        private boolean isCancelled() {
+            return cancelled;
+        }
+    }
+}
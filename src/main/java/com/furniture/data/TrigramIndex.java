@@ -0,0 +1,144 @@
+package com.furniture.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Trigram index over a sorted term dictionary, used to find the terms within a few typos of a word
+ * Every term is padded ("$$sofa$$") and split into trigrams, each trigram keeps the ids of the terms
+ * containing it. A lookup counts the trigrams the word shares with each term, and only the terms that
+ * share enough of them and have a close enough length get the exact edit distance check.
+ * The distance is optimal string alignment: insertions, deletions, substitutions and transpositions of
+ * adjacent characters count one edit each, so "sfoa" is one edit from "sofa".
+ */
+final class TrigramIndex {
+    private static final String PAD = "$$";
+
+    private final String[] terms;
+    private final Map<String, int[]> postings = new HashMap<>();
+
+    TrigramIndex(String[] terms) {
+        this.terms = terms;
+        Map<String, List<Integer>> building = new HashMap<>();
+        for (int id = 0; id < terms.length; id++) {
+            for (String gram : trigrams(terms[id])) {
+                building.computeIfAbsent(gram, g -> new ArrayList<>()).add(id);
+            }
+        }
+        building.forEach((gram, ids) -> postings.put(gram, ids.stream().mapToInt(Integer::intValue).toArray()));
+    }
+
+    private static Set<String> trigrams(String word) {
+        String padded = PAD + word + PAD;
+        Set<String> grams = new LinkedHashSet<>();
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            grams.add(padded.substring(i, i + 3));
+        }
+        return grams;
+    }
+
+    // Typos tolerated in a word of this length: none up to 2 characters, one up to 5, two beyond
+    static int maxEdits(int length) {
+        return length <= 2 ? 0 : length <= 5 ? 1 : 2;
+    }
+
+    /**
+     * Ids of the terms at most maxEdits edits from the word, with their distances, ids ascending
+     * Returns [ids, distances].
+     */
+    int[][] similar(String word, int maxEdits) {
+        if (maxEdits <= 0) {
+            return new int[][]{new int[0], new int[0]};
+        }
+        Set<String> grams = trigrams(word);
+        // q-gram bound: an insertion, deletion or substitution changes at most three of the word's trigrams,
+        // a transposition four, so a term with fewer shared trigrams is more than maxEdits edits away.
+        // Only terms sharing a trigram are ever counted: a six-letter word two transpositions from a term
+        // ("edfcfa", "defcaf") may share none with it and is not matched
+        int required = Math.max(1, grams.size() - 3 * maxEdits - maxEdits);
+        int[] shared = new int[terms.length];
+        int[] touched = new int[16];
+        int touchedCount = 0;
+        for (String gram : grams) {
+            int[] ids = postings.get(gram);
+            if (ids == null) {
+                continue;
+            }
+            for (int id : ids) {
+                if (shared[id]++ == 0) {
+                    if (touchedCount == touched.length) {
+                        touched = Arrays.copyOf(touched, touchedCount * 2);
+                    }
+                    touched[touchedCount++] = id;
+                }
+            }
+        }
+        int[] ids = new int[touchedCount];
+        int[] distances = new int[touchedCount];
+        int n = 0;
+        for (int i = 0; i < touchedCount; i++) {
+            int id = touched[i];
+            String term = terms[id];
+            if (shared[id] < required || Math.abs(term.length() - word.length()) > maxEdits) {
+                continue;
+            }
+            int distance = distance(word, term, maxEdits);
+            if (distance <= maxEdits) {
+                ids[n] = id;
+                distances[n] = distance;
+                n++;
+            }
+        }
+        // Ascending ids, so that the terms come out in dictionary order
+        long[] packed = new long[n];
+        for (int i = 0; i < n; i++) {
+            packed[i] = ((long) ids[i] << 32) | distances[i];
+        }
+        Arrays.sort(packed);
+        int[][] result = {new int[n], new int[n]};
+        for (int i = 0; i < n; i++) {
+            result[0][i] = (int) (packed[i] >>> 32);
+            result[1][i] = (int) packed[i];
+        }
+        return result;
+    }
+
+    // Optimal string alignment distance, or max + 1 as soon as it is known to exceed max
+    static int distance(String a, String b, int max) {
+        int[] previous2 = new int[b.length() + 1];
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+        int previousMin = 0;
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            int rowMin = current[0];
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                int value = Math.min(Math.min(previous[j] + 1, current[j - 1] + 1), previous[j - 1] + cost);
+                if (i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2) && a.charAt(i - 2) == b.charAt(j - 1)) {
+                    value = Math.min(value, previous2[j - 2] + 1);
+                }
+                current[j] = value;
+                rowMin = Math.min(rowMin, value);
+            }
+            // A transposition reaches back two rows, so both must be over the limit
+            if (rowMin > max && previousMin > max) {
+                return max + 1;
+            }
+            previousMin = rowMin;
+            int[] recycled = previous2;
+            previous2 = previous;
+            previous = current;
+            current = recycled;
+        }
+        return Math.min(previous[b.length()], max + 1);
+    }
+}
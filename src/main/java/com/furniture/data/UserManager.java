@@ -2,99 +2,85 @@ package com.furniture.data;
 
 import com.furniture.model.Address;
 import com.furniture.model.User;
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import com.google.gson.reflect.TypeToken;
-
-import java.io.IOException;
-import java.lang.reflect.Type;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * User Data Manager
+ * Users are indexed by id and by username, both indexes are updated by every mutation.
  */
 public class UserManager {
-    private final Gson gson;
-    private final String dataPath;
-    private List<User> users;
+    private final EntityStore<User> store;
+    private final Map<String, User> usersById = new ConcurrentHashMap<>();
+    private final Map<String, User> usersByUsername = new ConcurrentHashMap<>();
+    private final IdGenerator ids;
+    private final PersistenceScheduler.Handle persistence;
 
-    public UserManager(String dataPath) {
-        this.gson = new GsonBuilder().setPrettyPrinting().create();
-        this.dataPath = dataPath;
+    public UserManager(EntityStore<User> store, IdGenerator ids, PersistenceScheduler scheduler) {
+        this.store = store;
+        this.ids = ids;
         loadUsers();
+        this.persistence = scheduler.register("users", this::saveUsers);
     }
 
     private void loadUsers() {
-        try {
-            String json = new String(Files.readAllBytes(Paths.get(dataPath + "users.json")), StandardCharsets.UTF_8);
-            Type type = new TypeToken<Map<String, List<User>>>(){}.getType();
-            Map<String, List<User>> data = gson.fromJson(json, type);
-            this.users = data != null && data.get("users") != null ? data.get("users") : new ArrayList<>();
-        } catch (Exception e) {
-            this.users = new ArrayList<>();
-            System.err.println("Failed to load user data:" + e.getMessage());
+        for (User user : store.loadAll().values()) {
+            index(user);
         }
     }
 
-    public void saveUsers() {
-        try {
-            Map<String, List<User>> data = new HashMap<>();
-            data.put("users", users);
-            Files.write(Paths.get(dataPath + "users.json"), gson.toJson(data).getBytes(StandardCharsets.UTF_8));
-        } catch (IOException e) {
-            System.err.println("Failed to save user data:" + e.getMessage());
+    private void index(User user) {
+        User previous = usersById.put(user.getId(), user);
+        if (previous != null && !previous.getUsername().equals(user.getUsername())) {
+            usersByUsername.remove(previous.getUsername(), previous);
         }
+        usersByUsername.put(user.getUsername(), user);
+    }
+
+    public void saveUsers() {
+        store.flush(persistence.isDurable());
+    }
+
+    // Hand a changed user to the storage engine
+    private void saveUser(User user) {
+        store.put(user.getId(), user);
+        persistence.markDirty();
     }
 
     public User getUserById(String id) {
-        return users.stream()
-                .filter(u -> u.getId().equals(id))
-                .findFirst()
-                .orElse(null);
+        return id != null ? usersById.get(id) : null;
     }
 
     public User getUserByUsername(String username) {
-        return users.stream()
-                .filter(u -> u.getUsername().equals(username))
-                .findFirst()
-                .orElse(null);
+        return username != null ? usersByUsername.get(username) : null;
     }
 
     public User login(String username, String password) {
-        return users.stream()
-                .filter(u -> u.getUsername().equals(username) && u.getPassword().equals(password))
-                .findFirst()
-                .orElse(null);
+        User user = getUserByUsername(username);
+        return user != null && user.getPassword().equals(password) ? user : null;
     }
 
-    public User register(User newUser) {
+    public synchronized User register(User newUser) {
         // Check if the username already exists
         if (getUserByUsername(newUser.getUsername()) != null) {
             return null;
         }
         // Generate a new ID
-        String newId = "U" + String.format("%03d", users.size() + 1);
-        newUser.setId(newId);
+        newUser.setId(ids.nextId("U"));
         newUser.setCreatedAt(java.time.LocalDateTime.now().toString().replace("T", " ").substring(0, 19));
         // Initialize the address list
         if (newUser.getAddresses() == null) {
             newUser.setAddresses(new ArrayList<>());
         }
-        users.add(newUser);
-        saveUsers();
+        index(newUser);
+        saveUser(newUser);
         return newUser;
     }
 
-    public void updateUser(User user) {
-        for (int i = 0; i < users.size(); i++) {
-            if (users.get(i).getId().equals(user.getId())) {
-                users.set(i, user);
-                saveUsers();
-                return;
-            }
+    public synchronized void updateUser(User user) {
+        if (usersById.containsKey(user.getId())) {
+            index(user);
+            saveUser(user);
         }
     }
 
@@ -111,7 +97,7 @@ public class UserManager {
         }
         
         user.addAddress(address);
-        saveUsers();
+        saveUser(user);
         return address;
     }
 
@@ -123,7 +109,7 @@ public class UserManager {
         
         boolean result = user.removeAddress(addressId);
         if (result) {
-            saveUsers();
+            saveUser(user);
         }
         return result;
     }
@@ -147,7 +133,7 @@ public class UserManager {
         }
         
         if (found) {
-            saveUsers();
+            saveUser(user);
         }
         return found;
     }
@@ -0,0 +1,64 @@
+package com.furniture.data;
+
+import com.furniture.model.Order;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Order history of one user, kept in creation order as orders are placed
+ * Entries are held oldest first so that a new order is an append, and read back from the end, so the
+ * newest-first history, its latest N orders and the orders since a point in time come out without
+ * scanning or sorting the user's orders.
+ */
+class UserOrderIndex {
+    private final List<Entry> entries = new ArrayList<>();
+
+    UserOrderIndex(List<Order> orders) {
+        for (Order order : orders) {
+            add(order);
+        }
+    }
+
+    synchronized void add(Order order) {
+        String createdAt = order.getCreatedAt() != null ? order.getCreatedAt() : "";
+        // Orders almost always arrive newest last, so the insert position is found from the end
+        int position = entries.size();
+        while (position > 0 && entries.get(position - 1).createdAt.compareTo(createdAt) > 0) {
+            position--;
+        }
+        for (int i = position - 1; i >= 0 && entries.get(i).createdAt.equals(createdAt); i--) {
+            if (entries.get(i).orderId.equals(order.getId())) {
+                return;
+            }
+        }
+        entries.add(position, new Entry(order.getId(), createdAt));
+    }
+
+    /**
+     * Ids of the user's orders, newest first
+     * limit: at most this many orders, 0 for all of them
+     * since: only orders created at or after this "yyyy-MM-dd HH:mm:ss" time, null for all of them
+     */
+    synchronized List<String> newest(int limit, String since) {
+        List<String> ids = new ArrayList<>();
+        for (int i = entries.size() - 1; i >= 0 && (limit <= 0 || ids.size() < limit); i--) {
+            Entry entry = entries.get(i);
+            if (since != null && entry.createdAt.compareTo(since) < 0) {
+                break;
+            }
+            ids.add(entry.orderId);
+        }
+        return ids;
+    }
+
+    private static class Entry {
+        private final String orderId;
+        private final String createdAt;
+
+        Entry(String orderId, String createdAt) {
+            this.orderId = orderId;
+            this.createdAt = createdAt;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.furniture.model;
+
+import java.util.List;
+
+/**
+ * One page of a larger result
+ */
+public class Page<T> {
+    private List<T> items;
+    private int total;
+    private int offset;
+    private int limit;
+    private String nextCursor; // null on the last page
+
+    public Page() {}
+
+    public Page(List<T> items, int total, int offset, int limit) {
+        this.items = items;
+        this.total = total;
+        this.offset = offset;
+        this.limit = limit;
+    }
+
+    // Getters and Setters
+    public List<T> getItems() { return items; }
+    public void setItems(List<T> items) { this.items = items; }
+
+    public int getTotal() { return total; }
+    public void setTotal(int total) { this.total = total; }
+
+    public int getOffset() { return offset; }
+    public void setOffset(int offset) { this.offset = offset; }
+
+    public int getLimit() { return limit; }
+    public void setLimit(int limit) { this.limit = limit; }
+
+    public String getNextCursor() { return nextCursor; }
+    public void setNextCursor(String nextCursor) { this.nextCursor = nextCursor; }
+
+    public boolean hasMore() {
+        return offset + items.size() < total;
+    }
+}
@@ -0,0 +1,28 @@
+package com.furniture.model;
+
+/**
+ * Search box completion: a product name or a category
+ */
+public class Suggestion {
+    private String text;
+    private String type; // "product" or "category"
+    private String productId; // set when the name belongs to exactly one product
+
+    public Suggestion() {}
+
+    public Suggestion(String text, String type, String productId) {
+        this.text = text;
+        this.type = type;
+        this.productId = productId;
+    }
+
+    // Getters and Setters
+    public String getText() { return text; }
+    public void setText(String text) { this.text = text; }
+
+    public String getType() { return type; }
+    public void setType(String type) { this.type = type; }
+
+    public String getProductId() { return productId; }
+    public void setProductId(String productId) { this.productId = productId; }
+}
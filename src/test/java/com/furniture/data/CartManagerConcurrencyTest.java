@@ -0,0 +1,179 @@
+package com.furniture.data;
+
+import com.furniture.model.CartItem;
+import com.furniture.model.Product;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Concurrent cart mutations through the lock stripes of CartManager
+ * Every test hammers the carts from several threads, then checks that no update was lost and that the
+ * cart store (the shard logs on disk, read back by a new store) holds exactly the carts in memory.
+ */
+class CartManagerConcurrencyTest {
+    private static final int THREADS = 8;
+    private static final int ROUNDS = 2000;
+    private static final String SHARED = "P000";
+
+    @TempDir
+    Path dataDir;
+
+    private PersistenceScheduler scheduler;
+    private JsonCartStore cartStore;
+    private CartManager cartManager;
+
+    @BeforeEach
+    void setUp() {
+        scheduler = new PersistenceScheduler();
+        ProductManager productManager = new ProductManager(new MemoryStore<>(products()), scheduler);
+        cartStore = new JsonCartStore(dataPath());
+        cartManager = new CartManager(cartStore, productManager, scheduler);
+    }
+
+    @AfterEach
+    void tearDown() {
+        scheduler.shutdown();
+    }
+
+    private String dataPath() {
+        return dataDir.toString() + "/";
+    }
+
+    // P000 is shared by every thread, P001.. belong to one thread each
+    private static Map<String, Product> products() {
+        Map<String, Product> products = new LinkedHashMap<>();
+        for (int i = 0; i <= THREADS; i++) {
+            String id = String.format("P%03d", i);
+            products.put(id, new Product(id, "Product " + i, "", 100 + i, "Sofa", "", 1000, "", "", 4.5, 10));
+        }
+        return products;
+    }
+
+    private static String ownProduct(int thread) {
+        return String.format("P%03d", thread + 1);
+    }
+
+    @Test
+    void sameUserKeepsEveryUpdate() throws Exception {
+        String userId = "U001";
+        Concurrently.run(THREADS, thread -> {
+            String own = ownProduct(thread);
+            for (int round = 0; round < ROUNDS; round++) {
+                assertTrue(cartManager.addToCart(userId, SHARED, 1));
+                assertTrue(cartManager.addToCart(userId, own, 2));
+                assertTrue(cartManager.updateCartItem(userId, own, round + 1));
+                if (round % 10 == 9) {
+                    assertTrue(cartManager.removeFromCart(userId, own));
+                    assertTrue(cartManager.addToCart(userId, own, round + 1));
+                }
+            }
+        });
+
+        Map<String, Integer> cart = quantities(cartManager.getCart(userId));
+        assertEquals(THREADS * ROUNDS, cart.get(SHARED));
+        for (int thread = 0; thread < THREADS; thread++) {
+            assertEquals(ROUNDS, cart.get(ownProduct(thread)));
+        }
+        assertStoredCartsMatch(userId);
+    }
+
+    @Test
+    void differentUsersKeepEveryUpdate() throws Exception {
+        List<Map<String, Integer>> expected = new ArrayList<>();
+        for (int thread = 0; thread < THREADS; thread++) {
+            expected.add(new TreeMap<>());
+        }
+        Concurrently.run(THREADS, thread -> {
+            String userId = "U" + (100 + thread);
+            // The only writer of this user, so a plain map is the model of the cart
+            Map<String, Integer> model = expected.get(thread);
+            for (int round = 0; round < ROUNDS; round++) {
+                String productId = String.format("P%03d", round % (THREADS + 1));
+                if (round % 7 == 3) {
+                    if (cartManager.updateCartItem(userId, productId, round)) {
+                        model.put(productId, round);
+                    }
+                } else if (round % 7 == 5) {
+                    if (cartManager.removeFromCart(userId, productId)) {
+                        model.remove(productId);
+                    }
+                } else if (round % 7 == 6 && round % 5 == 0) {
+                    assertTrue(cartManager.clearCart(userId));
+                    model.clear();
+                } else {
+                    assertTrue(cartManager.addToCart(userId, productId, 1));
+                    model.merge(productId, 1, Integer::sum);
+                }
+            }
+        });
+
+        String[] userIds = new String[THREADS];
+        for (int thread = 0; thread < THREADS; thread++) {
+            userIds[thread] = "U" + (100 + thread);
+            assertEquals(expected.get(thread), quantities(cartManager.getCart(userIds[thread])));
+        }
+        assertStoredCartsMatch(userIds);
+    }
+
+    @Test
+    void clearRacingAddsLeavesTheSameCartInMemoryAndInTheStore() throws Exception {
+        String userId = "U002";
+        Concurrently.run(THREADS, thread -> {
+            for (int round = 0; round < ROUNDS; round++) {
+                if (thread == 0 && round % 50 == 0) {
+                    cartManager.clearCart(userId);
+                } else {
+                    assertTrue(cartManager.addToCart(userId, ownProduct(thread), 1));
+                    cartManager.updateCartItem(userId, SHARED, round);
+                    cartManager.addToCart(userId, SHARED, 1);
+                }
+            }
+        });
+
+        // Thread 0 cleared last at round ROUNDS - 50, after that it added to its own product only
+        Map<String, Integer> cart = quantities(cartManager.getCart(userId));
+        assertEquals(49, cart.get(ownProduct(0)));
+        assertStoredCartsMatch(userId);
+    }
+
+    // Flush the shard logs and read them back through a new store, as a restart would
+    private void assertStoredCartsMatch(String... userIds) {
+        cartStore.flush(true);
+        Map<String, List<CartItem>> stored = new JsonCartStore(dataPath()).loadAll();
+        for (String userId : userIds) {
+            List<CartItem> inMemory = cartManager.getCart(userId);
+            List<CartItem> onDisk = stored.getOrDefault(userId, new ArrayList<>());
+            assertEquals(quantities(inMemory), quantities(onDisk), "cart of " + userId);
+            assertEquals(order(inMemory), order(onDisk), "item order of " + userId);
+        }
+    }
+
+    private static Map<String, Integer> quantities(List<CartItem> cart) {
+        Map<String, Integer> quantities = new TreeMap<>();
+        for (CartItem item : cart) {
+            assertEquals(null, quantities.put(item.getProductId(), item.getQuantity()),
+                    "duplicate line for " + item.getProductId());
+        }
+        return quantities;
+    }
+
+    private static List<String> order(List<CartItem> cart) {
+        List<String> ids = new ArrayList<>();
+        for (CartItem item : cart) {
+            ids.add(item.getProductId());
+        }
+        return ids;
+    }
+}
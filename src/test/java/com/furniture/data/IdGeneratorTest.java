@@ -0,0 +1,98 @@
+package com.furniture.data;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Snowflake-style ids of IdGenerator
+ * Ids of one generator are unique and strictly increasing from every thread, keep the node id in bits
+ * 12-21 whatever happens, and stay so when a millisecond's 4096 sequence numbers run out.
+ */
+class IdGeneratorTest {
+    private static final int THREADS = 8;
+    private static final int NODE = 0x2A5;
+
+    private static long node(long id) {
+        return (id >>> 12) & 1023;
+    }
+
+    private static long sequence(long id) {
+        return id & 4095;
+    }
+
+    private static long timestamp(long id) {
+        return id >>> 22;
+    }
+
+    @Test
+    void idsFromManyThreadsAreUniqueAndIncreasing() throws Exception {
+        IdGenerator ids = new IdGenerator(NODE);
+        int perThread = 200_000;
+        long[][] issued = new long[THREADS][perThread];
+        Concurrently.run(THREADS, thread -> {
+            for (int i = 0; i < perThread; i++) {
+                issued[thread][i] = ids.nextId();
+            }
+        });
+
+        long[] all = new long[THREADS * perThread];
+        for (int thread = 0; thread < THREADS; thread++) {
+            long[] own = issued[thread];
+            for (int i = 0; i < perThread; i++) {
+                assertEquals(NODE, node(own[i]));
+                if (i > 0) {
+                    assertTrue(own[i] > own[i - 1], "id " + own[i] + " after " + own[i - 1]);
+                }
+            }
+            System.arraycopy(own, 0, all, thread * perThread, perThread);
+        }
+        Arrays.sort(all);
+        for (int i = 1; i < all.length; i++) {
+            assertTrue(all[i] != all[i - 1], "duplicate id " + all[i]);
+        }
+    }
+
+    @Test
+    void exhaustedSequenceBorrowsTheNextMillisecond() {
+        IdGenerator ids = new IdGenerator(NODE);
+        long previous = ids.nextId();
+        int issued = 0;
+        int carries = 0;
+        // A tight loop hands out far more than 4096 ids a millisecond, the sequence runs out again and again
+        while (issued < 2_000_000 && carries < 10) {
+            long id = ids.nextId();
+            issued++;
+            assertTrue(id > previous, "id " + id + " after " + previous);
+            assertEquals(NODE, node(id));
+            if (timestamp(id) == timestamp(previous) + 1 && sequence(previous) == 4095) {
+                assertEquals(0, sequence(id));
+                carries++;
+            }
+            previous = id;
+        }
+        assertTrue(carries > 0, "the sequence never ran out");
+
+        // A borrowed millisecond is at most one per 4096 ids ahead of the clock
+        long clock = System.currentTimeMillis() - 1704067200000L;
+        assertTrue(timestamp(previous) <= clock + issued / 4096 + 1, "timestamp ran ahead of the clock");
+    }
+
+    @Test
+    void prefixedIdsAndNodeRange() {
+        IdGenerator ids = new IdGenerator(1023);
+        String first = ids.nextId("ORD");
+        String second = ids.nextId("ORD");
+        assertTrue(first.startsWith("ORD") && second.startsWith("ORD"));
+        assertTrue(Long.parseLong(second.substring(3)) > Long.parseLong(first.substring(3)));
+        assertEquals(1023, node(Long.parseLong(first.substring(3))));
+
+        assertThrows(IllegalArgumentException.class, () -> new IdGenerator(-1));
+        assertThrows(IllegalArgumentException.class, () -> new IdGenerator(1024));
+        assertEquals(0, node(new IdGenerator(0).nextId()));
+    }
+}
@@ -0,0 +1,159 @@
+package com.furniture.data;
+
+import com.furniture.model.CartItem;
+import com.furniture.model.Product;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checkout holds of InventoryHolds
+ * Held stock is gone from the available stock but still in the stored stock. A hold ends exactly once:
+ * it expires and gives its stock back, or becomes an order that sells it, never both and never neither.
+ */
+class InventoryHoldsTest {
+    private static final int THREADS = 8;
+
+    private PersistenceScheduler scheduler;
+    private MemoryStore<Product> store;
+    private ProductManager productManager;
+    private InventoryHolds holds;
+
+    @BeforeEach
+    void setUp() {
+        scheduler = new PersistenceScheduler();
+        Map<String, Product> products = new LinkedHashMap<>();
+        products.put("A", product("A", 10));
+        products.put("B", product("B", 5));
+        products.put("S", product("S", 5000));
+        store = new MemoryStore<>(products);
+        productManager = new ProductManager(store, scheduler);
+        holds = new InventoryHolds(productManager);
+    }
+
+    @AfterEach
+    void tearDown() {
+        holds.stop();
+        scheduler.shutdown();
+    }
+
+    private static Product product(String id, int stock) {
+        return new Product(id, "Product " + id, "", 100, "Sofa", "", stock, "", "", 4.5, 10);
+    }
+
+    private static CartItem item(String productId, int quantity) {
+        return new CartItem(productId, null, 0, 0, quantity, null, 0);
+    }
+
+    // Available stock is what a buyer can still take, stored stock is what a restart would start from
+    private void assertStock(int available, int stored, String productId) {
+        assertTrue(productManager.checkStock(productId, available), productId + " has less than " + available);
+        assertFalse(productManager.checkStock(productId, available + 1), productId + " has more than " + available);
+        assertEquals(stored, store.get(productId).getStock(), "stored stock of " + productId);
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "timed out");
+            Thread.sleep(20);
+        }
+    }
+
+    @Test
+    void expiredHoldGivesItsStockBack() throws Exception {
+        assertTrue(holds.hold("U1", Arrays.asList(item("A", 4), item("B", 5)), 300) > 0);
+        assertStock(6, 10, "A");
+        assertStock(0, 5, "B");
+        assertEquals(4, holds.heldQuantity("U1", "A"));
+
+        await(() -> productManager.checkStock("B", 5));
+        assertEquals(0, holds.heldQuantity("U1", "A"));
+        assertStock(10, 10, "A");
+        assertStock(5, 5, "B");
+        // The expired hold is gone, the order takes fresh stock
+        assertTrue(holds.convert("U1", Collections.singletonList(item("B", 5))));
+        assertStock(0, 0, "B");
+    }
+
+    @Test
+    void holdThatFailsLeavesNothingHeld() {
+        assertEquals(-1, holds.hold("U1", Arrays.asList(item("A", 4), item("B", 6)), 60_000));
+        assertStock(10, 10, "A");
+        assertStock(5, 5, "B");
+        assertEquals(0, holds.heldQuantity("U1", "A"));
+    }
+
+    @Test
+    void convertingAHoldSellsItsStockOnce() throws Exception {
+        assertTrue(holds.hold("U1", Collections.singletonList(item("A", 5)), 300) > 0);
+        assertStock(5, 10, "A");
+
+        // Two of the five held are sold, the other three go back
+        assertTrue(holds.convert("U1", Collections.singletonList(item("A", 2))));
+        assertStock(8, 8, "A");
+
+        // The hold's timeout was cancelled, its expiry must not give the stock back a second time
+        Thread.sleep(600);
+        assertStock(8, 8, "A");
+
+        // An order larger than the hold takes the difference from the available stock
+        assertTrue(holds.hold("U2", Collections.singletonList(item("A", 3)), 60_000) > 0);
+        assertStock(5, 8, "A");
+        assertTrue(holds.convert("U2", Arrays.asList(item("A", 5), item("B", 1))));
+        assertStock(3, 3, "A");
+        assertStock(4, 4, "B");
+    }
+
+    @Test
+    void replacingAHoldOnlyMovesTheDifference() {
+        assertTrue(holds.hold("U1", Collections.singletonList(item("A", 3)), 60_000) > 0);
+        assertTrue(holds.hold("U1", Arrays.asList(item("A", 5), item("B", 2)), 60_000) > 0);
+        assertStock(5, 10, "A");
+        assertStock(3, 5, "B");
+
+        assertTrue(holds.hold("U1", Collections.singletonList(item("B", 1)), 60_000) > 0);
+        assertStock(10, 10, "A");
+        assertStock(4, 5, "B");
+    }
+
+    @Test
+    void racingExpiryAndOrdersNeitherLoseNorDuplicateStock() throws Exception {
+        AtomicInteger sold = new AtomicInteger();
+        Concurrently.run(THREADS, thread -> {
+            Random random = new Random(thread);
+            String userId = "U" + thread;
+            for (int round = 0; round < 2000; round++) {
+                // Timeouts of a few milliseconds expire while the order is being converted
+                holds.hold(userId, Collections.singletonList(item("S", 1 + random.nextInt(5))), random.nextInt(5));
+                if (random.nextBoolean()) {
+                    Thread.sleep(random.nextInt(3));
+                }
+                int quantity = random.nextInt(6);
+                if (random.nextInt(4) > 0 && holds.convert(userId, Collections.singletonList(item("S", quantity)))) {
+                    sold.addAndGet(quantity);
+                }
+            }
+        });
+
+        // Once every hold has expired, only the orders are missing from the stock
+        int left = 5000 - sold.get();
+        await(() -> productManager.checkStock("S", left));
+        for (int thread = 0; thread < THREADS; thread++) {
+            assertEquals(0, holds.heldQuantity("U" + thread, "S"));
+        }
+        assertStock(left, left, "S");
+    }
+}
@@ -0,0 +1,38 @@
+package com.furniture.data;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Entity store that only lives in memory, for tests whose subject is not the storage engine
+ * Puts may come from several threads, loadAll returns a copy in insertion order.
+ */
+final class MemoryStore<V> implements EntityStore<V> {
+    private final Map<String, V> values;
+
+    MemoryStore(Map<String, V> values) {
+        this.values = Collections.synchronizedMap(new LinkedHashMap<>(values));
+    }
+
+    @Override
+    public Map<String, V> loadAll() {
+        synchronized (values) {
+            return new LinkedHashMap<>(values);
+        }
+    }
+
+    // The value last put for the key
+    V get(String key) {
+        return values.get(key);
+    }
+
+    @Override
+    public void put(String key, V value) {
+        values.put(key, value);
+    }
+
+    @Override
+    public void flush(boolean force) {
+    }
+}
@@ -0,0 +1,136 @@
+package com.furniture.data;
+
+import com.furniture.model.CartItem;
+import com.furniture.model.Product;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * All-or-nothing stock reservation of ProductManager
+ * A reservation that fails on any item must leave every counter as it was, and concurrent reservations
+ * must never sell more than the stock, whatever order their compare-and-sets interleave in.
+ */
+class ProductManagerStockTest {
+    private static final int THREADS = 8;
+
+    private PersistenceScheduler scheduler;
+    private MemoryStore<Product> store;
+    private ProductManager productManager;
+
+    @BeforeEach
+    void setUp() {
+        scheduler = new PersistenceScheduler();
+        Map<String, Product> products = new LinkedHashMap<>();
+        products.put("A", product("A", 1000));
+        products.put("B", product("B", 600));
+        products.put("C", product("C", 10));
+        products.put("D", product("D", 3));
+        store = new MemoryStore<>(products);
+        productManager = new ProductManager(store, scheduler);
+    }
+
+    @AfterEach
+    void tearDown() {
+        scheduler.shutdown();
+    }
+
+    private static Product product(String id, int stock) {
+        return new Product(id, "Product " + id, "", 100, "Sofa", "", stock, "", "", 4.5, 10);
+    }
+
+    private static CartItem item(String productId, int quantity) {
+        return new CartItem(productId, null, 0, 0, quantity, null, 0);
+    }
+
+    // The stock counter is exactly the expected value, and the product shows it
+    private void assertStock(int expected, String productId) {
+        assertTrue(productManager.checkStock(productId, expected), productId + " has less than " + expected);
+        assertFalse(productManager.checkStock(productId, expected + 1), productId + " has more than " + expected);
+        assertEquals(expected, productManager.getProductById(productId).getStock());
+    }
+
+    @Test
+    void shortLaterItemRollsBackTheEarlierOnes() {
+        assertFalse(productManager.reserveStock(Arrays.asList(item("C", 4), item("A", 5), item("D", 5))));
+        assertStock(10, "C");
+        assertStock(1000, "A");
+        assertStock(3, "D");
+
+        // Lines of one product are taken together, 6 + 6 is more than C has
+        assertFalse(productManager.reserveStock(Arrays.asList(item("C", 6), item("C", 6))));
+        assertStock(10, "C");
+
+        assertFalse(productManager.reserveStock(Arrays.asList(item("C", 1), item("missing", 1))));
+        assertStock(10, "C");
+
+        assertTrue(productManager.reserveStock(Arrays.asList(item("C", 4), item("D", 3))));
+        assertStock(6, "C");
+        assertStock(0, "D");
+        assertEquals(6, store.get("C").getStock());
+        assertEquals(0, store.get("D").getStock());
+    }
+
+    @Test
+    void negativeQuantityIsRefusedAndZeroTakesNothing() {
+        assertFalse(productManager.reserveStock(Arrays.asList(item("C", 2), item("D", -1))));
+        assertStock(10, "C");
+        assertStock(3, "D");
+
+        assertTrue(productManager.reserveStock(Arrays.asList(item("C", 0), item("D", 1))));
+        assertStock(10, "C");
+        assertStock(2, "D");
+    }
+
+    @Test
+    void concurrentReservationsNeverOversell() throws Exception {
+        // Every order wants one A and one B: B runs out first, the A of every later order is put back
+        AtomicIntegerArray sold = new AtomicIntegerArray(THREADS);
+        List<CartItem> order = Arrays.asList(item("A", 1), item("B", 1));
+        Concurrently.run(THREADS, thread -> {
+            while (productManager.reserveStock(order)) {
+                sold.incrementAndGet(thread);
+            }
+            // Keep failing for a while, each failure takes an A and has to give it back
+            for (int i = 0; i < 2000; i++) {
+                assertFalse(productManager.reserveStock(order));
+            }
+        });
+
+        int total = 0;
+        for (int thread = 0; thread < THREADS; thread++) {
+            total += sold.get(thread);
+        }
+        assertEquals(600, total);
+        assertStock(0, "B");
+        assertStock(400, "A");
+        assertEquals(400, store.get("A").getStock());
+        assertEquals(0, store.get("B").getStock());
+    }
+
+    @Test
+    void releasedStockCanBeReservedAgain() throws Exception {
+        Concurrently.run(THREADS, thread -> {
+            List<CartItem> order = Arrays.asList(item("C", 1), item("A", 2));
+            for (int i = 0; i < 5000; i++) {
+                if (productManager.reserveStock(order)) {
+                    productManager.releaseStock(order);
+                }
+            }
+        });
+
+        assertStock(10, "C");
+        assertStock(1000, "A");
+        assertEquals(10, store.get("C").getStock());
+    }
+}
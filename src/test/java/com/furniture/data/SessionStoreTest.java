@@ -0,0 +1,131 @@
+package com.furniture.data;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Sliding expiry and capacity bound of SessionStore
+ * Every session that leaves the store is counted exactly once, as expired, evicted or logged out, so the
+ * published stats always add up: active = created - expired - evicted - loggedOut, one timeout per session.
+ */
+class SessionStoreTest {
+    private static final int THREADS = 8;
+
+    private SessionStore sessions;
+
+    @AfterEach
+    void tearDown() {
+        if (sessions != null) {
+            sessions.stop();
+        }
+    }
+
+    private long stat(String name) {
+        return ((Number) sessions.getStats().get(name)).longValue();
+    }
+
+    // The wheel thread may be between a removal and its counter, so the stats are given a moment to settle
+    private void assertCountersAddUp() throws InterruptedException {
+        await(store -> {
+            long active = stat("active");
+            long gone = stat("expired") + stat("evicted") + stat("loggedOut");
+            return active == stat("created") - gone && active == stat("pendingTimeouts");
+        });
+    }
+
+    // The wheel ticks once a second, give it a few rounds
+    private void await(Predicate<SessionStore> condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.test(sessions)) {
+            assertTrue(System.currentTimeMillis() < deadline, "timed out with " + sessions.getStats());
+            Thread.sleep(50);
+        }
+    }
+
+    @Test
+    void usedSessionOutlivesTheTtlAndIdleOneExpires() throws Exception {
+        sessions = new SessionStore(2000, 1000);
+        sessions.put("busy", "U1");
+        sessions.put("idle", "U2");
+
+        // Over twice the TTL, the busy session is used far more often than the TTL
+        long until = System.currentTimeMillis() + 4500;
+        while (System.currentTimeMillis() < until) {
+            assertEquals("U1", sessions.get("busy"));
+            Thread.sleep(300);
+        }
+        assertEquals(1, stat("expired"));
+        assertNull(sessions.get("idle"));
+        assertEquals("U1", sessions.get("busy"));
+        assertEquals(1, stat("active"));
+        assertCountersAddUp();
+
+        // Left alone, the busy session expires too and its timeout is gone from the wheel
+        await(store -> stat("expired") == 2);
+        assertNull(sessions.get("busy"));
+        assertEquals(0, stat("active"));
+        assertCountersAddUp();
+    }
+
+    @Test
+    void fullStoreEvictsAndCountsEverySession() throws Exception {
+        sessions = new SessionStore(60_000, 64);
+        int perThread = 500;
+        Concurrently.run(THREADS, thread -> {
+            for (int i = 0; i < perThread; i++) {
+                sessions.put("T" + thread + "-" + i, "U" + thread);
+            }
+        });
+
+        long active = stat("active");
+        assertEquals(THREADS * perThread, stat("created"));
+        assertTrue(active > 0 && active <= 64, "active " + active);
+        assertEquals(0, stat("expired"));
+        assertCountersAddUp();
+
+        // Exactly the sessions counted as active still resolve, logging them out empties the store
+        int live = 0;
+        for (int thread = 0; thread < THREADS; thread++) {
+            for (int i = 0; i < perThread; i++) {
+                String token = "T" + thread + "-" + i;
+                if (sessions.get(token) != null) {
+                    live++;
+                    sessions.remove(token);
+                    sessions.remove(token);
+                }
+            }
+        }
+        assertEquals(active, live);
+        assertEquals(live, stat("loggedOut"));
+        assertEquals(0, stat("active"));
+        assertCountersAddUp();
+    }
+
+    @Test
+    void logoutsRacingTheWheelAreCountedOnce() throws Exception {
+        sessions = new SessionStore(1000, 100_000);
+        int perThread = 2000;
+        Concurrently.run(THREADS, thread -> {
+            for (int i = 0; i < perThread; i++) {
+                String token = "T" + thread + "-" + i;
+                sessions.put(token, "U" + thread);
+                if (i % 3 == 0) {
+                    sessions.remove(token);
+                }
+            }
+        });
+        assertCountersAddUp();
+
+        // Whatever the wheel did not get to yet expires within a couple of ticks
+        await(store -> stat("active") == 0);
+        assertEquals(THREADS * perThread, stat("expired") + stat("loggedOut"));
+        assertEquals(0, stat("evicted"));
+        assertCountersAddUp();
+    }
+}